@@ -43,6 +43,23 @@ public final class Common {
 
     public static final String DEFAULT_XPATH = "file:content";
 
+    /**
+     * Boolean parameter asking for the JSON body of a response as a {@link String} instead of a typed result
+     */
+    public static final String RAW_JSON_PARAM = "rawJson";
+
+    /**
+     * Number of consecutive items of a batch sent in a single call, see
+     * {@link org.nuxeo.ai.sdk.rest.client.BatchDispatcher}
+     */
+    public static final String CHUNK_SIZE_PARAM = "chunkSize";
+
+    /**
+     * Maximal number of calls of a batch in flight, each sending a chunk of items, see
+     * {@link org.nuxeo.ai.sdk.rest.client.BatchDispatcher}
+     */
+    public static final String PARALLELISM_PARAM = "parallelism";
+
     /**
      * Custom headers used within Insight API
      */
@@ -0,0 +1,162 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Negotiates gzip compression with Insight Cloud.
+ * Request bodies larger than the threshold are gzipped, unless gzip does not make them smaller, gzip responses are
+ * requested and transparently decoded.
+ * Keeps track of the bytes saved on the wire in both directions.
+ */
+public class CompressionInterceptor implements Interceptor {
+
+    public static final String GZIP = "gzip";
+
+    protected static final String CONTENT_ENCODING = "Content-Encoding";
+
+    protected static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    protected final long threshold;
+
+    protected final LongAdder requestBytesSaved = new LongAdder();
+
+    protected final LongAdder responseBytesSaved = new LongAdder();
+
+    /**
+     * @param threshold minimal size in bytes of a request body to compress
+     */
+    public CompressionInterceptor(long threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request().newBuilder().header(ACCEPT_ENCODING, GZIP).build();
+        RequestBody body = request.body();
+        if (body != null && request.header(CONTENT_ENCODING) == null && body.contentLength() >= threshold) {
+            Buffer compressed = new Buffer();
+            try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+                body.writeTo(sink);
+            }
+            // already compressed or tiny bodies grow once gzipped, they are sent as is
+            if (compressed.size() < body.contentLength()) {
+                requestBytesSaved.add(body.contentLength() - compressed.size());
+                RequestBody gzipped = RequestBody.create(body.contentType(), compressed.readByteString());
+                request = request.newBuilder()
+                                 .header(CONTENT_ENCODING, GZIP)
+                                 .method(request.method(), gzipped)
+                                 .build();
+            }
+        }
+
+        Response response = chain.proceed(request);
+        if (response.body() == null || !GZIP.equalsIgnoreCase(response.header(CONTENT_ENCODING))) {
+            return response;
+        }
+
+        MediaType contentType = response.body().contentType();
+        CountingSource compressed = new CountingSource(response.body().source());
+        Source decoded = new ForwardingSource(new GzipSource(compressed)) {
+
+            protected long decodedBytes;
+
+            protected boolean accounted;
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read == -1) {
+                    account();
+                } else {
+                    decodedBytes += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // streaming parsers close the body once done, without reading up to its end
+                account();
+                super.close();
+            }
+
+            protected void account() {
+                if (!accounted) {
+                    accounted = true;
+                    responseBytesSaved.add(decodedBytes - compressed.count);
+                }
+            }
+        };
+        return response.newBuilder()
+                       .removeHeader(CONTENT_ENCODING)
+                       .removeHeader("Content-Length")
+                       .body(ResponseBody.create(contentType, -1L, Okio.buffer(decoded)))
+                       .build();
+    }
+
+    /**
+     * @return number of bytes not sent thanks to request body compression
+     */
+    public long getRequestBytesSaved() {
+        return requestBytesSaved.sum();
+    }
+
+    /**
+     * @return number of bytes not received thanks to response compression, accounted once a body is read or closed
+     */
+    public long getResponseBytesSaved() {
+        return responseBytesSaved.sum();
+    }
+
+    protected static class CountingSource extends ForwardingSource {
+
+        protected long count;
+
+        protected CountingSource(Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
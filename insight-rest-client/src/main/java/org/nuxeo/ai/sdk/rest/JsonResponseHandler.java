@@ -0,0 +1,81 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.nuxeo.ai.sdk.rest.client.InsightClient.MAPPER;
+
+import java.io.IOException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Streams the body of a successful response straight into a Jackson parser, no intermediate {@link String} is built.
+ * Unsuccessful and empty responses are handled as {@code null}.
+ */
+public class JsonResponseHandler<T> implements ResponseHandler<T> {
+
+    private static final Logger log = LogManager.getLogger(JsonResponseHandler.class);
+
+    protected final ParserFunction<T> function;
+
+    /**
+     * @param function reading the result from a parser positioned before the first token of the body
+     */
+    public JsonResponseHandler(ParserFunction<T> function) {
+        this.function = function;
+    }
+
+    public static <T> JsonResponseHandler<T> of(Class<T> type) {
+        ObjectReader reader = MAPPER.readerFor(type);
+        return new JsonResponseHandler<>(reader::readValue);
+    }
+
+    public static <T> JsonResponseHandler<T> of(TypeReference<T> type) {
+        ObjectReader reader = MAPPER.readerFor(type);
+        return new JsonResponseHandler<>(reader::readValue);
+    }
+
+    @Override
+    public T handleResponse(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            log.warn("Unsuccessful response for {}, code {} and reason {}", response.request().url(),
+                    response.code(), response.message());
+            return null;
+        } else if (body.contentLength() == 0) {
+            return null;
+        }
+
+        try (JsonParser parser = MAPPER.getFactory().createParser(body.byteStream())) {
+            return function.apply(parser);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ParserFunction<T> {
+        T apply(JsonParser parser) throws IOException;
+    }
+}
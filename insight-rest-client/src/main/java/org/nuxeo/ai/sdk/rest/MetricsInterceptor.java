@@ -0,0 +1,101 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
+import org.nuxeo.ai.sdk.rest.metrics.MetricsRegistry;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Interceptor reporting each exchange with Insight Cloud to a {@link MetricsRegistry}.
+ * The endpoint is taken from the {@link InsightCall} tag of the request. Registered as the last application
+ * interceptor, it reports the DNS errors, connect failures and connect timeouts that never reach the network
+ * interceptors, while its byte counts remain the ones of the bodies as compressed on the wire.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    protected final MetricsRegistry registry;
+
+    public MetricsInterceptor(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        InsightCall<?> call = request.tag(InsightCall.class);
+        API.Endpoint endpoint = call != null ? call.getEndpoint() : null;
+
+        registry.callStarted(endpoint, request.body() != null ? request.body().contentLength() : 0);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            registry.callFailed(endpoint, e, System.nanoTime() - start);
+            throw e;
+        }
+
+        registry.callCompleted(endpoint, response.code(), System.nanoTime() - start);
+        ResponseBody body = response.body();
+        if (body == null) {
+            registry.callEnded(endpoint, 0);
+            return response;
+        }
+
+        Source counting = new ForwardingSource(body.source()) {
+
+            protected long count;
+
+            protected final AtomicBoolean ended = new AtomicBoolean();
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    count += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (ended.compareAndSet(false, true)) {
+                    registry.callEnded(endpoint, count);
+                }
+                super.close();
+            }
+        };
+        return response.newBuilder()
+                       .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(counting)))
+                       .build();
+    }
+}
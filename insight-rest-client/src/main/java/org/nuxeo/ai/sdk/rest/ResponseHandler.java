@@ -30,4 +30,14 @@ import okhttp3.Response;
 @FunctionalInterface
 public interface ResponseHandler<T> {
     T handleResponse(Response response) throws IOException;
+
+    /**
+     * A streaming handler returns a result reading the response body lazily, which becomes responsible for closing
+     * the response. Streaming calls are never coalesced.
+     *
+     * @return {@code true} when the response must be left open once a non null result is returned
+     */
+    default boolean isStreaming() {
+        return false;
+    }
 }
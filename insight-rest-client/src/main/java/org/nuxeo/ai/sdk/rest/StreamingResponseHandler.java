@@ -0,0 +1,85 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.nuxeo.ai.sdk.rest.client.InsightClient.MAPPER;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import com.fasterxml.jackson.core.JsonParser;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Hands the body of a successful response over to a result reading it lazily, such as an iterator over a large
+ * array. The result owns the parser and the response and must close them once consumed.
+ * Unsuccessful and empty responses are handled as {@code null}.
+ */
+public class StreamingResponseHandler<T> implements ResponseHandler<T> {
+
+    private static final Logger log = LogManager.getLogger(StreamingResponseHandler.class);
+
+    protected final StreamFunction<T> function;
+
+    /**
+     * @param function building the result from a parser positioned before the first token of the body
+     */
+    public StreamingResponseHandler(StreamFunction<T> function) {
+        this.function = function;
+    }
+
+    @Override
+    public T handleResponse(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            log.warn("Unsuccessful response for {}, code {} and reason {}", response.request().url(),
+                    response.code(), response.message());
+            return null;
+        } else if (body.contentLength() == 0) {
+            return null;
+        }
+
+        JsonParser parser = MAPPER.getFactory().createParser(body.byteStream());
+        try {
+            return function.apply(parser, response);
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @FunctionalInterface
+    public interface StreamFunction<T> {
+
+        /**
+         * @param parser   parser of the body
+         * @param resource to close once the result is consumed
+         */
+        T apply(JsonParser parser, Closeable resource) throws IOException;
+    }
+}
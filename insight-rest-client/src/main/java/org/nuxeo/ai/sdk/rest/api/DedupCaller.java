@@ -23,6 +23,7 @@ package org.nuxeo.ai.sdk.rest.api;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonMap;
+import static org.nuxeo.ai.sdk.rest.Common.DISTANCE_PARAM;
 import static org.nuxeo.ai.sdk.rest.Common.Headers.SCROLL_ID_HEADER;
 import static org.nuxeo.ai.sdk.rest.Common.UID;
 import static org.nuxeo.ai.sdk.rest.Common.XPATH_PARAM;
@@ -33,19 +34,33 @@ import static org.nuxeo.ai.sdk.rest.client.InsightClient.MAPPER;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ai.sdk.objects.TensorInstances;
 import org.nuxeo.ai.sdk.objects.deduplication.ScrollableResult;
+import org.nuxeo.ai.sdk.objects.deduplication.SimilarTuple;
 import org.nuxeo.ai.sdk.rest.ResponseHandler;
 import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.BatchResult;
+import org.nuxeo.ai.sdk.rest.client.FindCache;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
 import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.Pipeline;
+import org.nuxeo.ai.sdk.rest.exception.ConfigurationException;
 import org.nuxeo.ai.sdk.rest.exception.InvalidEndpointException;
 import org.nuxeo.ai.sdk.rest.exception.InvalidParametersException;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 
@@ -53,6 +68,10 @@ import okhttp3.Response;
 
 /**
  * {@link Resource} for Deduplication API of Insight Cloud
+ * <p>
+ * Large sets of documents are indexed with {@link #index(Iterator, int, BiConsumer)}, which pipelines the index
+ * requests with a bounded number in flight. Similar tuples are walked page after page with {@link #scroll()}.
+ * Similar documents lookups go through the {@link FindCache} when it is enabled, the index calls invalidating it.
  */
 public class DedupCaller implements Resource {
 
@@ -89,34 +108,130 @@ public class DedupCaller implements Resource {
     @Override
     @SuppressWarnings("unchecked")
     public <T> T call(Map<String, Serializable> parameters, Serializable payload) throws IOException {
+        FindCache.Key findKey = findKey(parameters, payload);
+        List<String> cached = findKey != null ? client.getFindCache().get(findKey) : null;
+        if (cached != null) {
+            return (T) cached;
+        }
+
+        return (T) client.execute(prepare(parameters, payload, findKey));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> callAsync() throws IOException {
+        return callAsync(emptyMap());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> callAsync(Map<String, Serializable> parameters, Serializable payload)
+            throws IOException {
+        FindCache.Key findKey = findKey(parameters, payload);
+        List<String> cached = findKey != null ? client.getFindCache().get(findKey) : null;
+        if (cached != null) {
+            return (CompletableFuture<T>) CompletableFuture.completedFuture(cached);
+        }
+
+        return (CompletableFuture<T>) client.enqueue(prepare(parameters, payload, findKey));
+    }
+
+    protected InsightCall<?> prepare(Map<String, Serializable> parameters, Serializable payload) throws IOException {
+        return prepare(parameters, payload, null);
+    }
+
+    /**
+     * @param findKey {@link FindCache.Key} under which the similar documents found are cached, {@code null} not to
+     *                cache them
+     */
+    protected InsightCall<?> prepare(Map<String, Serializable> parameters, Serializable payload,
+            @Nullable FindCache.Key findKey) throws IOException {
         switch (this.type) {
         case INDEX:
-            return (T) handleIndex(parameters, (TensorInstances) payload);
+            return handleIndex(parameters, (TensorInstances) payload);
         case FIND:
-            return (T) handleFind(parameters, (TensorInstances) payload);
+            return handleFind(parameters, (TensorInstances) payload, findKey);
         case ALL:
-            return (T) handleAll(parameters);
+            return handleAll(parameters);
         case RECALCULATETUPLES:
-            return (T) handleRecalculateTuples(parameters);
+            return handleRecalculateTuples(parameters);
         case DELETE:
-            return (T) handleDelete(parameters);
+            return handleDelete(parameters);
         case DROP:
-            return (T) handleDrop();
+            return handleDrop();
         default:
             throw new InvalidEndpointException("No such endpoint " + this.type.name());
         }
     }
 
-    private Boolean handleIndex(Map<String, Serializable> parameters, TensorInstances payload)
+    /**
+     * Indexes every item of the source, pipelining the calls over the connection pool of the client.
+     *
+     * @param items       source of the {@link IndexItem}s, pulled lazily
+     * @param maxInFlight maximal number of index requests in flight
+     * @param listener    receiving each item with its {@link BatchResult}, failed with an
+     *                    {@link UnexpectedResponseException} holding the status when rejected by Insight Cloud
+     * @return {@link CompletableFuture} of the {@link Pipeline.Summary} once every item is indexed
+     */
+    public CompletableFuture<Pipeline.Summary> index(Iterator<IndexItem> items, int maxInFlight,
+            BiConsumer<? super IndexItem, BatchResult<Boolean>> listener) {
+        if (type != API.Dedup.INDEX) {
+            throw new InvalidEndpointException("Bulk indexing is not supported by " + type.name());
+        } else if (client == null || !client.isConnected()) {
+            throw new ConfigurationException("No active client");
+        }
+
+        Pipeline<IndexItem, Boolean> pipeline = Pipeline.of(client, item -> {
+            try {
+                return indexCall(item.getParameters(), item.getInstances(), response -> {
+                    if (!response.isSuccessful()) {
+                        throw new UnexpectedResponseException(
+                                "Failed to index document " + item.getDocId() + " with xpath " + item.getXpath()
+                                        + ", code " + response.code() + " and reason " + response.message(),
+                                response.code());
+                    }
+                    return true;
+                });
+            } catch (JsonProcessingException e) {
+                throw new InvalidParametersException("Cannot serialize instances of " + item.getDocId(), e);
+            }
+        }, maxInFlight);
+        return pipeline.run(items, listener);
+    }
+
+    /**
+     * @see #index(Iterator, int, BiConsumer)
+     */
+    public CompletableFuture<Pipeline.Summary> index(Stream<IndexItem> items, int maxInFlight,
+            BiConsumer<? super IndexItem, BatchResult<Boolean>> listener) {
+        return index(items.iterator(), maxInFlight, listener).whenComplete((summary, failure) -> items.close());
+    }
+
+    /**
+     * @return {@link ScrollIterator} over every similar tuple of {@link API.Dedup#ALL}, prefetching the next page
+     */
+    public ScrollIterator scroll() {
+        if (type != API.Dedup.ALL) {
+            throw new InvalidEndpointException("Scrolling is not supported by " + type.name());
+        } else if (client == null || !client.isConnected()) {
+            throw new ConfigurationException("No active client");
+        }
+
+        return new ScrollIterator(scrollId -> client.enqueue(
+                handleAll(scrollId == null ? emptyMap() : singletonMap(SCROLL_ID_HEADER, scrollId))));
+    }
+
+    /**
+     * @return {@link Stream} of every similar tuple of {@link API.Dedup#ALL}, see {@link #scroll()}
+     */
+    public Stream<SimilarTuple> tuples() {
+        return scroll().stream();
+    }
+
+    private InsightCall<Boolean> handleIndex(Map<String, Serializable> parameters, TensorInstances payload)
             throws JsonProcessingException {
         String docId = (String) parameters.get(UID);
         String xpath = (String) parameters.get(XPATH_PARAM);
-        if (StringUtils.isAnyEmpty(docId, xpath) || payload == null) {
-            throw new InvalidParametersException("Document UUID, XPath and Payload are required parameters");
-        }
-
-        String json = MAPPER.writeValueAsString(payload);
-        return client.post(this.type.toPath(POST, client.getProjectId(), parameters), json, response -> {
+        return indexCall(parameters, payload, response -> {
             if (response.isSuccessful()) {
                 log.debug("Successfully indexed document {} with xpath {}", docId, xpath);
                 return true;
@@ -129,30 +244,54 @@ public class DedupCaller implements Resource {
         });
     }
 
-    private List<String> handleFind(Map<String, Serializable> parameters, TensorInstances payload)
-            throws JsonProcessingException {
+    private InsightCall<Boolean> indexCall(Map<String, Serializable> parameters, TensorInstances payload,
+            ResponseHandler<Boolean> handler) throws JsonProcessingException {
+        String docId = (String) parameters.get(UID);
+        String xpath = (String) parameters.get(XPATH_PARAM);
+        if (StringUtils.isAnyEmpty(docId, xpath) || payload == null) {
+            throw new InvalidParametersException("Document UUID, XPath and Payload are required parameters");
+        }
+
+        String json = MAPPER.writeValueAsString(payload);
+        return InsightCall.post(type, this.type.toPath(POST, client.getProjectId(), parameters), json,
+                invalidating(handler, cache -> cache.invalidateXpath(client.getProjectId(), xpath)));
+    }
+
+    private InsightCall<List<String>> handleFind(Map<String, Serializable> parameters, TensorInstances payload,
+            @Nullable FindCache.Key findKey) throws JsonProcessingException {
         String docId = (String) parameters.get(UID);
         String xpath = (String) parameters.get(XPATH_PARAM);
         ResponseHandler<List<String>> handler = handleResponse(docId, xpath);
+        if (findKey != null) {
+            FindCache cache = client.getFindCache();
+            long generation = cache.getGeneration();
+            ResponseHandler<List<String>> found = handler;
+            handler = response -> {
+                List<String> documents = found.handleResponse(response);
+                if (response.isSuccessful()) {
+                    cache.put(findKey, documents, generation);
+                }
+                return documents;
+            };
+        }
 
         if (payload != null) {
             String json = MAPPER.writeValueAsString(payload);
-            return client.post(this.type.toPath(POST, client.getProjectId(), parameters), json, handler);
+            return InsightCall.post(type, this.type.toPath(POST, client.getProjectId(), parameters), json, handler);
         } else {
             if (StringUtils.isEmpty(xpath)) {
                 throw new InvalidParametersException("Document UUID and XPath are required parameters");
             }
 
-            return client.get(this.type.toPath(GET, client.getProjectId(), parameters), handler);
+            return InsightCall.get(type, this.type.toPath(GET, client.getProjectId(), parameters), handler);
         }
     }
 
-    @Nullable
-    private ScrollableResult handleAll(Map<String, Serializable> parameters) {
+    private InsightCall<ScrollableResult> handleAll(Map<String, Serializable> parameters) {
         Map<String, Serializable> headers = parameters.containsKey(SCROLL_ID_HEADER) ?
                 singletonMap(SCROLL_ID_HEADER, parameters.get(SCROLL_ID_HEADER)) :
                 emptyMap();
-        return client.get(this.type.toPath(GET, client.getProjectId()), headers, response -> {
+        return InsightCall.get(type, this.type.toPath(GET, client.getProjectId()), headers, response -> {
             if (!response.isSuccessful()) {
                 log.error(
                         "Failed to get all similar documents for project {};\nURL: {}\nresponse code: {}\nmessage: {}",
@@ -166,16 +305,59 @@ public class DedupCaller implements Resource {
         });
     }
 
-    private Boolean handleRecalculateTuples(Map<String, Serializable> parameters) {
-        return client.post(this.type.toPath(POST, client.getProjectId(), parameters), "{}", Response::isSuccessful);
+    private InsightCall<Boolean> handleRecalculateTuples(Map<String, Serializable> parameters) {
+        return InsightCall.post(type, this.type.toPath(POST, client.getProjectId(), parameters), "{}",
+                invalidating(Response::isSuccessful, cache -> cache.invalidateProject(client.getProjectId())));
     }
 
-    private Boolean handleDelete(Map<String, Serializable> parameters) {
-        return client.delete(this.type.toPath(DELETE, client.getProjectId(), parameters), "{}", Response::isSuccessful);
+    private InsightCall<Boolean> handleDelete(Map<String, Serializable> parameters) {
+        String docId = (String) parameters.get(UID);
+        String xpath = (String) parameters.get(XPATH_PARAM);
+        return InsightCall.delete(type, this.type.toPath(DELETE, client.getProjectId(), parameters), "{}",
+                invalidating(Response::isSuccessful,
+                        cache -> cache.invalidateDeleted(client.getProjectId(), docId, xpath)));
     }
 
-    private Boolean handleDrop() {
-        return client.delete(this.type.toPath(DELETE, client.getProjectId()), "{}", Response::isSuccessful);
+    private InsightCall<Boolean> handleDrop() {
+        return InsightCall.delete(type, this.type.toPath(DELETE, client.getProjectId()), "{}",
+                invalidating(Response::isSuccessful, cache -> cache.invalidateProject(client.getProjectId())));
+    }
+
+    /**
+     * @return {@link FindCache.Key} of the lookup when it goes through the {@link FindCache}, {@code null} otherwise
+     */
+    protected FindCache.Key findKey(Map<String, Serializable> parameters, Serializable payload)
+            throws JsonProcessingException {
+        if (type != API.Dedup.FIND || client == null || client.getFindCache() == null) {
+            return null;
+        }
+
+        String docId = (String) parameters.get(UID);
+        String xpath = (String) parameters.get(XPATH_PARAM);
+        int distance = (int) parameters.getOrDefault(DISTANCE_PARAM, 0);
+        if (payload instanceof TensorInstances) {
+            return FindCache.key(client.getProjectId(), xpath, distance, (TensorInstances) payload);
+        }
+        return StringUtils.isAnyEmpty(docId, xpath) ? null :
+                FindCache.key(client.getProjectId(), docId, xpath, distance);
+    }
+
+    /**
+     * @return handler invalidating the {@link FindCache} once the index call is answered, whatever the answer
+     */
+    protected <T> ResponseHandler<T> invalidating(ResponseHandler<T> handler, Consumer<FindCache> invalidation) {
+        FindCache cache = client.getFindCache();
+        if (cache == null) {
+            return handler;
+        }
+
+        return response -> {
+            try {
+                return handler.handleResponse(response);
+            } finally {
+                invalidation.accept(cache);
+            }
+        };
     }
 
     protected ResponseHandler<List<String>> handleResponse(String docId, String xpath) {
@@ -192,4 +374,46 @@ public class DedupCaller implements Resource {
                     emptyList();
         };
     }
+
+    /**
+     * A document property to index, see {@link #index(Iterator, int, BiConsumer)}
+     */
+    public static class IndexItem {
+
+        protected final String docId;
+
+        protected final String xpath;
+
+        protected final TensorInstances instances;
+
+        public IndexItem(@Nonnull String docId, @Nonnull String xpath, @Nonnull TensorInstances instances) {
+            this.docId = docId;
+            this.xpath = xpath;
+            this.instances = instances;
+        }
+
+        public String getDocId() {
+            return docId;
+        }
+
+        public String getXpath() {
+            return xpath;
+        }
+
+        public TensorInstances getInstances() {
+            return instances;
+        }
+
+        protected Map<String, Serializable> getParameters() {
+            Map<String, Serializable> parameters = new HashMap<>();
+            parameters.put(UID, docId);
+            parameters.put(XPATH_PARAM, xpath);
+            return parameters;
+        }
+
+        @Override
+        public String toString() {
+            return "IndexItem{" + "docId='" + docId + '\'' + ", xpath='" + xpath + '\'' + '}';
+        }
+    }
 }
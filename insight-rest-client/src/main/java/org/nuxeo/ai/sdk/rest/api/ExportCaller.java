@@ -32,19 +32,19 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ai.sdk.objects.AICorpus;
 import org.nuxeo.ai.sdk.objects.CorporaParameters;
 import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
 import org.nuxeo.ai.sdk.rest.client.InsightClient;
 import org.nuxeo.ai.sdk.rest.exception.ConfigurationException;
 import org.nuxeo.ai.sdk.rest.exception.InvalidEndpointException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 
-import okhttp3.Response;
-
 /**
  * {@link Resource} for Export API of Insight Cloud
  */
@@ -69,31 +69,42 @@ public class ExportCaller implements Resource {
     @Override
     @SuppressWarnings("unchecked") // TODO: can be Object to avoid suppression
     public <T> T call(Map<String, Serializable> parameters, Serializable payload) throws IOException {
+        return (T) client.execute(prepare(parameters, payload));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> callAsync(Map<String, Serializable> parameters, Serializable payload)
+            throws IOException {
+        return (CompletableFuture<T>) client.enqueue(prepare(parameters, payload));
+    }
+
+    protected InsightCall<?> prepare(Map<String, Serializable> parameters, Serializable payload) throws IOException {
         if (client == null || !client.isConnected()) {
             throw new ConfigurationException("No active client");
         }
 
         switch (this.type) {
         case INIT:
-            return (T) handleInit(parameters, (CorporaParameters) payload);
+            return handleInit(parameters, (CorporaParameters) payload);
         case BIND:
-            return (T) handleBind(parameters);
+            return handleBind(parameters);
         case ATTACH:
-            return (T) handleAttach((String) parameters.get(CORPORA_ID_PARAM), (AICorpus) payload);
+            return handleAttach((String) parameters.get(CORPORA_ID_PARAM), (AICorpus) payload);
         case DONE:
-            return (T) handleDone(parameters);
+            return handleDone(parameters);
         default:
             throw new InvalidEndpointException("No such endpoint " + this.type.name());
         }
     }
 
-    private String handleInit(Map<String, Serializable> parameters, CorporaParameters corporaParameters)
+    private InsightCall<String> handleInit(Map<String, Serializable> parameters, CorporaParameters corporaParameters)
             throws JsonProcessingException {
         String payload = MAPPER.writeValueAsString(corporaParameters);
         Objects.requireNonNull(payload, "Init Export API requires non null Corpora Parameters");
 
         String corporaId = (String) parameters.get(CORPORA_ID_PARAM);
-        return client.post(API.Export.INIT.toPath(client.getProjectId(), corporaId), payload, response -> {
+        return InsightCall.post(type, API.Export.INIT.toPath(client.getProjectId(), corporaId), payload, response -> {
             if (!response.isSuccessful()) {
                 log.error("Failed to initialize Export for project {}, payload {}, url {}, code {} and reason {}",
                         client.getProjectId(), payload, client.getUrl(), response.code(), response.message());
@@ -113,25 +124,28 @@ public class ExportCaller implements Resource {
         });
     }
 
-    private Boolean handleBind(Map<String, Serializable> parameters) {
+    private InsightCall<Boolean> handleBind(Map<String, Serializable> parameters) {
         String modelId = (String) parameters.get(MODEL_ID_PARAM);
         Objects.requireNonNull(modelId, "Bind Export API requires model ID");
 
         String corporaId = (String) parameters.get(CORPORA_ID_PARAM);
         Objects.requireNonNull(corporaId, "Bind Export API requires corpora ID");
 
-        return client.post(API.Export.BIND.toPath(client.getProjectId(), modelId, corporaId), "{}", (resp) -> {
-            if (!resp.isSuccessful()) {
-                log.error("Failed to bind model {} with corpora {} for project {}, url {}, code {} and reason {}",
-                        modelId, corporaId, client.getProjectId(), client.getUrl(), resp.code(), resp.message());
-                return false;
-            }
-
-            return true;
-        });
+        return InsightCall.post(type, API.Export.BIND.toPath(client.getProjectId(), modelId, corporaId), "{}",
+                (resp) -> {
+                    if (!resp.isSuccessful()) {
+                        log.error(
+                                "Failed to bind model {} with corpora {} for project {}, url {}, code {} and reason {}",
+                                modelId, corporaId, client.getProjectId(), client.getUrl(), resp.code(),
+                                resp.message());
+                        return false;
+                    }
+
+                    return true;
+                });
     }
 
-    private String handleAttach(String corporaId, AICorpus payload) throws IOException {
+    private InsightCall<String> handleAttach(String corporaId, AICorpus payload) throws IOException {
         String jsonString;
         try (StringWriter writer = new StringWriter()) {
             MAPPER.writeValue(writer, payload);
@@ -140,33 +154,36 @@ public class ExportCaller implements Resource {
 
         log.info("Creating dataset document");
         Objects.requireNonNull(corporaId, "Attach API requires corpora ID");
-        JsonNode node = client.post(API.Export.ATTACH.toPath(client.getProjectId(), corporaId), jsonString, (resp) -> {
-            if (!resp.isSuccessful()) {
-                log.error(
-                        "Failed to create/upload the corpus dataset to project {}, payload {}, url {}, code {} and reason {}",
-                        client.getProjectId(), payload, client.getUrl(), resp.code(), resp.message());
-                return null;
-            }
-
-            return resp.body() != null ? MAPPER.readTree(resp.body().byteStream()) : null;
-        });
-
-        if (node == null || !node.has("uid")) {
-            log.error("Failed to create/upload the corpus dataset to project {}, payload {} and response {}",
-                    client.getProjectId(), payload, node);
-            return null;
-        } else {
-            String corpusId = node.get("uid").toString();
-            log.info("Corpus {} added to project {}, payload {}", corpusId, client.getProjectId(), payload);
-            return corpusId;
-        }
+        return InsightCall.post(type, API.Export.ATTACH.toPath(client.getProjectId(), corporaId), jsonString,
+                (resp) -> {
+                    if (!resp.isSuccessful()) {
+                        log.error(
+                                "Failed to create/upload the corpus dataset to project {}, payload {}, url {}, code {} and reason {}",
+                                client.getProjectId(), payload, client.getUrl(), resp.code(), resp.message());
+                        return null;
+                    }
+
+                    JsonNode node = resp.body() != null ? MAPPER.readTree(resp.body().byteStream()) : null;
+                    if (node == null || !node.has("uid")) {
+                        log.error(
+                                "Failed to create/upload the corpus dataset to project {}, payload {} and response {}",
+                                client.getProjectId(), payload, node);
+                        return null;
+                    } else {
+                        String corpusId = node.get("uid").toString();
+                        log.info("Corpus {} added to project {}, payload {}", corpusId, client.getProjectId(),
+                                payload);
+                        return corpusId;
+                    }
+                });
     }
 
-    private Boolean handleDone(Map<String, Serializable> parameters) {
+    private InsightCall<Boolean> handleDone(Map<String, Serializable> parameters) {
         String projectId = client.getProjectId();
         String exportId = (String) parameters.get(EXPORT_ID_PARAM);
         Objects.requireNonNull(exportId, "Done Export API requires export ID");
-        return client.post(API.Export.DONE.toPath(projectId, exportId), "{}", Response::code) == OK.getStatusCode();
+        return InsightCall.post(type, API.Export.DONE.toPath(projectId, exportId), "{}",
+                response -> response.code() == OK.getStatusCode());
     }
 
 }
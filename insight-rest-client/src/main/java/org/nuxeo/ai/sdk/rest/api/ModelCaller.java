@@ -20,23 +20,69 @@
 
 package org.nuxeo.ai.sdk.rest.api;
 
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static org.nuxeo.ai.sdk.rest.Common.CHUNK_SIZE_PARAM;
 import static org.nuxeo.ai.sdk.rest.Common.MODEL_ID_PARAM;
 import static org.nuxeo.ai.sdk.rest.Common.MODEL_NAME_PARAM;
+import static org.nuxeo.ai.sdk.rest.Common.PARALLELISM_PARAM;
+import static org.nuxeo.ai.sdk.rest.Common.RAW_JSON_PARAM;
 import static org.nuxeo.ai.sdk.rest.client.InsightClient.MAPPER;
+import static org.nuxeo.ai.sdk.rest.client.ModelCache.ETAG_HEADER;
+import static org.nuxeo.ai.sdk.rest.client.ModelCache.IF_NONE_MATCH_HEADER;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.objects.CorpusDelta;
+import org.nuxeo.ai.sdk.objects.InsightResponse;
+import org.nuxeo.ai.sdk.objects.ModelDescriptor;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import org.nuxeo.ai.sdk.rest.JsonResponseHandler;
+import org.nuxeo.ai.sdk.rest.ResponseHandler;
+import org.nuxeo.ai.sdk.rest.StreamingResponseHandler;
 import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.BatchDispatcher;
+import org.nuxeo.ai.sdk.rest.client.BatchPredictor;
+import org.nuxeo.ai.sdk.rest.client.BatchResult;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
 import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.InsightConfiguration;
+import org.nuxeo.ai.sdk.rest.client.ModelCache;
+import org.nuxeo.ai.sdk.rest.client.PredictBatcher;
+import org.nuxeo.ai.sdk.rest.client.PredictCache;
 import org.nuxeo.ai.sdk.rest.exception.ConfigurationException;
 import org.nuxeo.ai.sdk.rest.exception.InvalidEndpointException;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import okhttp3.Response;
 
 /**
  * {@link Resource} for Model API of Insight Cloud
+ * <p>
+ * Responses are streamed into typed results: a list of {@link ModelDescriptor} for the listings
+ * ({@link API.Model#ALL}, {@link API.Model#PUBLISHED} and {@link API.Model#BY_DATASOURCE}), {@link InsightResponse} for
+ * {@link API.Model#PREDICT} and a {@link CorpusDelta} for {@link API.Model#DELTA}, streaming its outputs from the
+ * response until exhausted or closed. Set the
+ * {@link org.nuxeo.ai.sdk.rest.Common#RAW_JSON_PARAM} parameter to {@code true} to get the body as a {@link String}
+ * instead.
+ * <p>
+ * A {@link List} of {@link TensorInstances} given as payload of {@link API.Model#PREDICT} is predicted as a batch:
+ * split into chunks of {@link org.nuxeo.ai.sdk.rest.Common#CHUNK_SIZE_PARAM} items each sent in a single call, with
+ * at most {@link org.nuxeo.ai.sdk.rest.Common#PARALLELISM_PARAM} calls in flight; the result is then a list of
+ * {@link BatchResult} in input order. Predictions go through the {@link PredictCache} when it is enabled, single
+ * predictions are gathered into batched calls by the {@link PredictBatcher} when a batch window is configured, the
+ * results of batched calls being cached per prediction.
+ * <p>
+ * When {@link InsightConfiguration#getModelCacheTtl()} is set the {@link API.Model#PUBLISHED} and
+ * {@link API.Model#BY_DATASOURCE} listings are served by the {@link ModelCache}.
  */
 public class ModelCaller implements Resource {
 
@@ -44,15 +90,35 @@ public class ModelCaller implements Resource {
 
     public static final String DATASOURCE_PARAM = "datasource";
 
+    protected static final ResponseHandler<CorpusDelta> DELTA_HANDLER = new StreamingResponseHandler<>(
+            CorpusDelta::read);
+
+    protected static final ResponseHandler<List<ModelDescriptor>> MODELS_HANDLER = new JsonResponseHandler<>(
+            ModelDescriptor::parseDocuments);
+
     private final Logger log = LogManager.getLogger(ModelCaller.class);
 
     private final InsightClient client;
 
     private final API.Model type;
 
+    /**
+     * Reads predictions keeping the labels configured by {@link InsightConfiguration#getPredictTopK()} and
+     * {@link InsightConfiguration#getPredictMinConfidence()}
+     */
+    protected final ObjectReader predictReader;
+
+    protected final ResponseHandler<InsightResponse> predictHandler;
+
     public ModelCaller(InsightClient client, API.Model type) {
         this.client = client;
         this.type = type;
+        InsightConfiguration configuration = client != null ? client.getConfiguration() : null;
+        this.predictReader = configuration != null && (configuration.getPredictTopK() >= 0
+                || configuration.getPredictMinConfidence() > 0) ?
+                InsightResponse.reader(MAPPER, configuration.getPredictTopK(),
+                        configuration.getPredictMinConfidence()) : MAPPER.readerFor(InsightResponse.class);
+        this.predictHandler = new JsonResponseHandler<>(predictReader::readValue);
     }
 
     @Override
@@ -63,66 +129,259 @@ public class ModelCaller implements Resource {
     @Override
     @SuppressWarnings("unchecked") // TODO: review casting
     public <T> T call(Map<String, Serializable> parameters, Serializable payload) throws JsonProcessingException {
+        ModelCache.Key key = cacheKey(parameters);
+        if (key != null) {
+            return (T) client.getModelCache().get(key, this::prepareRevision);
+        }
+
+        if (type == API.Model.PREDICT && payload instanceof List) {
+            return (T) predictBatch(parameters, (List<TensorInstances>) payload).join();
+        }
+
+        PredictCache.Key predictKey = predictKey(parameters, payload);
+        InsightResponse cached = cachedPrediction(predictKey);
+        if (cached != null) {
+            return (T) cached;
+        }
+
+        if (isBatched(parameters, payload)) {
+            return (T) predictBatched(parameters, (TensorInstances) payload).join();
+        }
+
+        return (T) client.execute(prepare(parameters, payload, predictKey));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> callAsync(Map<String, Serializable> parameters, Serializable payload)
+            throws JsonProcessingException {
+        ModelCache.Key key = cacheKey(parameters);
+        if (key != null) {
+            return (CompletableFuture<T>) client.getModelCache().getAsync(key, this::prepareRevision);
+        }
+
+        if (type == API.Model.PREDICT && payload instanceof List) {
+            return (CompletableFuture<T>) predictBatch(parameters, (List<TensorInstances>) payload);
+        }
+
+        PredictCache.Key predictKey = predictKey(parameters, payload);
+        InsightResponse cached = cachedPrediction(predictKey);
+        if (cached != null) {
+            return (CompletableFuture<T>) CompletableFuture.completedFuture(cached);
+        }
+
+        if (isBatched(parameters, payload)) {
+            return (CompletableFuture<T>) predictBatched(parameters, (TensorInstances) payload);
+        }
+
+        return (CompletableFuture<T>) client.enqueue(prepare(parameters, payload, predictKey));
+    }
+
+    /**
+     * Predicts the {@link TensorInstances} of the batch with one call per chunk, see {@link BatchDispatcher} and
+     * {@link BatchPredictor}.
+     *
+     * @return {@link CompletableFuture} of the {@link BatchResult} of every item, in input order
+     */
+    protected CompletableFuture<List<BatchResult<InsightResponse>>> predictBatch(
+            Map<String, Serializable> parameters, List<TensorInstances> batch) {
+        if (client == null || !client.isConnected()) {
+            throw new ConfigurationException("No active client");
+        }
+
+        String modelName = (String) parameters.get(MODEL_NAME_PARAM);
+        String datasource = (String) parameters.get(DATASOURCE_PARAM);
+        int chunkSize = ((Number) parameters.getOrDefault(CHUNK_SIZE_PARAM,
+                BatchDispatcher.DEFAULT_CHUNK_SIZE)).intValue();
+        int parallelism = ((Number) parameters.getOrDefault(PARALLELISM_PARAM,
+                client.getConfiguration().getMaxRequestsPerHost())).intValue();
+        BatchPredictor predictor = new BatchPredictor(client);
+        BatchDispatcher<TensorInstances, InsightResponse> dispatcher = new BatchDispatcher<>(
+                chunk -> predictor.predict(modelName, datasource, chunk), chunkSize, parallelism);
+        return dispatcher.dispatch(batch);
+    }
+
+    /**
+     * @return {@code true} when the prediction joins a batch of the {@link PredictBatcher}
+     */
+    protected boolean isBatched(Map<String, Serializable> parameters, Serializable payload) {
+        return type == API.Model.PREDICT && client.getPredictBatcher() != null && payload instanceof TensorInstances
+                && !Boolean.TRUE.equals(parameters.get(RAW_JSON_PARAM));
+    }
+
+    /**
+     * Predicts the instances within a batch of the {@link PredictBatcher}, a failed batch is handled as {@code null}
+     * like a failed prediction.
+     */
+    protected CompletableFuture<InsightResponse> predictBatched(Map<String, Serializable> parameters,
+            TensorInstances instances) {
+        String modelName = (String) parameters.get(MODEL_NAME_PARAM);
+        String datasource = (String) parameters.get(DATASOURCE_PARAM);
+        return client.getPredictBatcher().predict(modelName, datasource, instances).exceptionally(e -> {
+            log.error("Failed to predict {} for project {} with model {}", instances.docId, client.getProjectId(),
+                    modelName, e);
+            return null;
+        });
+    }
+
+    /**
+     * @return {@link PredictCache.Key} of the prediction when it goes through the {@link PredictCache}, {@code null}
+     * otherwise
+     */
+    protected PredictCache.Key predictKey(Map<String, Serializable> parameters, Serializable payload)
+            throws JsonProcessingException {
+        if (type != API.Model.PREDICT || client.getPredictCache() == null || !(payload instanceof TensorInstances)
+                || Boolean.TRUE.equals(parameters.get(RAW_JSON_PARAM))) {
+            return null;
+        }
+
+        return PredictCache.key((String) parameters.get(MODEL_NAME_PARAM), (String) parameters.get(DATASOURCE_PARAM),
+                (TensorInstances) payload);
+    }
+
+    /**
+     * @return cached prediction of the key, {@code null} when the prediction has to be made
+     */
+    @Nullable
+    protected InsightResponse cachedPrediction(@Nullable PredictCache.Key predictKey) {
+        byte[] body = predictKey != null ? client.getPredictCache().get(predictKey) : null;
+        if (body == null) {
+            return null;
+        }
+
+        try {
+            return predictReader.readValue(body);
+        } catch (IOException e) {
+            log.warn("Could not read cached prediction {}", predictKey, e);
+            return null;
+        }
+    }
+
+    protected InsightResponse cachePrediction(PredictCache.Key predictKey, Response response) throws IOException {
+        byte[] body = response.body().bytes();
+        if (body.length == 0) {
+            return null;
+        }
+
+        client.getPredictCache().put(predictKey, body);
+        return predictReader.readValue(body);
+    }
+
+    /**
+     * @return {@link ModelCache.Key} of the listing when it is served by the {@link ModelCache}, {@code null} otherwise
+     */
+    protected ModelCache.Key cacheKey(Map<String, Serializable> parameters) {
         if (client == null || !client.isConnected()) {
             throw new ConfigurationException("No active client");
         }
 
+        if (client.getModelCache() == null || Boolean.TRUE.equals(parameters.get(RAW_JSON_PARAM))) {
+            return null;
+        }
+
         switch (this.type) {
-        case ALL:
-            return (T) client.get(API.Model.ALL.toPath(client.getProjectId(), null, null), response -> {
-                if (response.body() == null) {
-                    return null;
-                }
+        case PUBLISHED:
+            return new ModelCache.Key(client.getProjectId(), type, (String) parameters.get(LABEL_PARAM), null);
+        case BY_DATASOURCE:
+            return new ModelCache.Key(client.getProjectId(), type, null,
+                    (String) parameters.getOrDefault(DATASOURCE_PARAM, client.getConfiguration().getDatasource()));
+        default:
+            return null;
+        }
+    }
 
-                return response.body().string();
-            });
+    /**
+     * @param key  {@link ModelCache.Key} of the listing
+     * @param etag ETag of the cached listing to revalidate, {@code null} to fetch it unconditionally
+     * @return {@link InsightCall} fetching the listing
+     */
+    protected InsightCall<ModelCache.Revision> prepareRevision(ModelCache.Key key, @Nullable String etag) {
+        String param = key.getEndpoint() == API.Model.PUBLISHED ? key.getLabel() : key.getDatasource();
+        Map<String, Serializable> headers = etag == null ? emptyMap() : singletonMap(IF_NONE_MATCH_HEADER, etag);
+        return InsightCall.get(key.getEndpoint(), key.getEndpoint().toPath(key.getProjectId(), null, param), headers,
+                response -> {
+                    if (response.code() == 304) {
+                        return ModelCache.Revision.NOT_MODIFIED;
+                    }
+
+                    List<ModelDescriptor> models = MODELS_HANDLER.handleResponse(response);
+                    return models == null ? null : new ModelCache.Revision(models, response.header(ETAG_HEADER));
+                });
+    }
+
+    protected InsightCall<?> prepare(Map<String, Serializable> parameters, Serializable payload)
+            throws JsonProcessingException {
+        return prepare(parameters, payload, null);
+    }
+
+    /**
+     * @param predictKey {@link PredictCache.Key} under which the prediction is cached, {@code null} not to cache it
+     */
+    protected InsightCall<?> prepare(Map<String, Serializable> parameters, Serializable payload,
+            @Nullable PredictCache.Key predictKey) throws JsonProcessingException {
+        if (client == null || !client.isConnected()) {
+            throw new ConfigurationException("No active client");
+        }
+
+        boolean rawJson = Boolean.TRUE.equals(parameters.get(RAW_JSON_PARAM));
+        ResponseHandler<?> modelsHandler = rawJson ? bodyAsString() : MODELS_HANDLER;
+        switch (this.type) {
+        case ALL:
+            return InsightCall.get(type, API.Model.ALL.toPath(client.getProjectId(), null, null), modelsHandler);
         case PUBLISHED:
             String label = (String) parameters.get(LABEL_PARAM);
-            return (T) client.get(API.Model.PUBLISHED.toPath(client.getProjectId(), null, label), response -> {
-                if (response.body() == null) {
-                    return null;
-                }
-
-                return response.body().string();
-            });
+            return InsightCall.get(type, API.Model.PUBLISHED.toPath(client.getProjectId(), null, label),
+                    modelsHandler);
         case BY_DATASOURCE: {
             String datasource = (String) parameters.getOrDefault(DATASOURCE_PARAM,
                     client.getConfiguration().getDatasource());
-            return (T) client.get(API.Model.BY_DATASOURCE.toPath(client.getProjectId(), null, datasource), response -> {
-                if (response.body() == null) {
-                    return null;
-                }
-
-                return response.body().string();
-            });
+            return InsightCall.get(type, API.Model.BY_DATASOURCE.toPath(client.getProjectId(), null, datasource),
+                    modelsHandler);
         }
         case DELTA:
             String modelId = (String) parameters.get(MODEL_ID_PARAM);
-            return (T) client.get(API.Model.DELTA.toPath(client.getProjectId(), modelId, null), response -> {
-                if (response.body() == null) {
-                    return null;
-                }
-
-                return response.body().string();
-            });
+            ResponseHandler<?> deltaHandler = rawJson ? bodyAsString() : DELTA_HANDLER;
+            return InsightCall.get(type, API.Model.DELTA.toPath(client.getProjectId(), modelId, null), deltaHandler);
         case PREDICT:
             Objects.requireNonNull(payload);
             String modelName = (String) parameters.get(MODEL_NAME_PARAM);
             String datasource = (String) parameters.get(DATASOURCE_PARAM);
             String json = MAPPER.writeValueAsString(payload);
-            return (T) client.post(API.Model.PREDICT.toPath(client.getProjectId(), modelName, datasource), json,
-                    response -> {
-                        if (!response.isSuccessful() || response.body() == null) {
-                            log.error("Failed to predict for project {}, payload {}, url {}, code {} and reason {}",
-                                    client.getProjectId(), payload, client.getUrl(), response.code(),
-                                    response.message());
-                            return null;
-                        }
-
-                        return response.body().string();
-                    });
+            String path = API.Model.PREDICT.toPath(client.getProjectId(), modelName, datasource);
+            // distinct handlers so that raw and typed predictions are never coalesced together
+            if (rawJson) {
+                return InsightCall.post(type, path, json,
+                        response -> isPredicted(response, payload) ? response.body().string() : null);
+            }
+            return InsightCall.post(type, path, json, response -> {
+                if (!isPredicted(response, payload)) {
+                    return null;
+                }
+
+                return predictKey != null ? cachePrediction(predictKey, response) :
+                        predictHandler.handleResponse(response);
+            });
         default:
             throw new InvalidEndpointException("No such endpoint " + this.type.name());
         }
     }
+
+    protected boolean isPredicted(Response response, Serializable payload) {
+        if (!response.isSuccessful() || response.body() == null) {
+            log.error("Failed to predict for project {}, payload {}, url {}, code {} and reason {}",
+                    client.getProjectId(), payload, client.getUrl(), response.code(), response.message());
+            return false;
+        }
+        return true;
+    }
+
+    protected ResponseHandler<String> bodyAsString() {
+        return response -> {
+            if (response.body() == null) {
+                return null;
+            }
+
+            return response.body().string();
+        };
+    }
 }
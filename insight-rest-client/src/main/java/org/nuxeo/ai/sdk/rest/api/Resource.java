@@ -23,6 +23,7 @@ package org.nuxeo.ai.sdk.rest.api;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 
 /**
@@ -40,4 +41,32 @@ public interface Resource {
 
     @Nullable
     <T> T call(Map<String, Serializable> parameters, Serializable payload) throws IOException;
+
+    /**
+     * Non blocking counterpart of {@link #call()}
+     *
+     * @return {@link CompletableFuture} completed with the same result {@link #call()} would return
+     */
+    default <T> CompletableFuture<T> callAsync() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Non blocking counterpart of {@link #call(Map)}
+     *
+     * @return {@link CompletableFuture} completed with the same result {@link #call(Map)} would return
+     */
+    default <T> CompletableFuture<T> callAsync(Map<String, Serializable> parameters) throws IOException {
+        return callAsync(parameters, null);
+    }
+
+    /**
+     * Non blocking counterpart of {@link #call(Map, Serializable)}
+     *
+     * @return {@link CompletableFuture} completed with the same result {@link #call(Map, Serializable)} would return
+     */
+    default <T> CompletableFuture<T> callAsync(Map<String, Serializable> parameters, Serializable payload)
+            throws IOException {
+        throw new UnsupportedOperationException();
+    }
 }
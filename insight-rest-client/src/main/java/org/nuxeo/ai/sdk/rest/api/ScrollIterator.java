@@ -0,0 +1,132 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.api;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ai.sdk.objects.deduplication.ScrollableResult;
+import org.nuxeo.ai.sdk.objects.deduplication.SimilarTuple;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
+
+/**
+ * Walks every {@link SimilarTuple} of {@link org.nuxeo.ai.sdk.rest.client.API.Dedup#ALL}, following the scroll ids
+ * of the pages. The next page is fetched asynchronously as soon as the current one is received, so that its latency
+ * is hidden while the current page is processed; no more than two pages are held at once. The iteration stops on the
+ * first empty page or a page without scroll id.
+ */
+public class ScrollIterator implements Iterator<SimilarTuple>, Closeable {
+
+    protected final Function<String, CompletableFuture<ScrollableResult>> fetcher;
+
+    protected Iterator<SimilarTuple> page = Collections.emptyIterator();
+
+    protected CompletableFuture<ScrollableResult> next;
+
+    protected int pages;
+
+    /**
+     * @param fetcher fetching the page of a scroll id, {@code null} for the first page
+     */
+    public ScrollIterator(Function<String, CompletableFuture<ScrollableResult>> fetcher) {
+        this.fetcher = fetcher;
+        this.next = fetcher.apply(null);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+
+            ScrollableResult result = join(next);
+            pages++;
+            if (result == null) {
+                next = null;
+                throw new UnexpectedResponseException("Failed to fetch page " + pages + " of similar tuples");
+            } else if (result.getResult() == null || result.getResult().isEmpty()) {
+                next = null;
+                return false;
+            }
+
+            page = result.getResult().iterator();
+            next = StringUtils.isBlank(result.getScrollId()) ? null : fetcher.apply(result.getScrollId());
+        }
+        return true;
+    }
+
+    @Override
+    public SimilarTuple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    /**
+     * @return number of pages received so far
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * @return sequential {@link Stream} of the remaining tuples, cancelling the prefetch when closed
+     */
+    public Stream<SimilarTuple> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(this::close);
+    }
+
+    /**
+     * Stops the iteration, cancelling the page being prefetched.
+     */
+    @Override
+    public void close() {
+        if (next != null) {
+            next.cancel(true);
+            next = null;
+        }
+        page = Collections.emptyIterator();
+    }
+
+    protected static <T> T join(@Nullable CompletableFuture<T> future) {
+        try {
+            return future != null ? future.join() : null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
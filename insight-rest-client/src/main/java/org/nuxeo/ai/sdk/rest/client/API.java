@@ -102,6 +102,12 @@ public class API {
 
         public final HttpMethod method = HttpMethod.GET;
 
+        @Override
+        public boolean isIdempotent(HttpMethod method) {
+            // prediction does not alter the model, POST only carries the payload
+            return method != HttpMethod.POST || this == PREDICT;
+        }
+
         /**
          * Resolve path between
          *
@@ -135,6 +141,13 @@ public class API {
 
         public static final String API_DEDUP = "ai/dedup/";
 
+        @Override
+        public boolean isIdempotent(HttpMethod method) {
+            // lookup by tensor does not alter the index, POST only carries the payload;
+            // a scroll request advances its server side cursor, repeating it could skip a page
+            return this == FIND || method == HttpMethod.GET && this != ALL;
+        }
+
         /**
          * Resolve path for
          *
@@ -193,5 +206,22 @@ public class API {
 
     public interface Endpoint {
 
+        /**
+         * Tells whether a call to this endpoint can be repeated without effects beyond those of the first one,
+         * idempotent calls can be retried, hedged or coalesced freely
+         *
+         * @param method {@link HttpMethod} of the call
+         * @return {@code true} when repeating the call is safe
+         */
+        default boolean isIdempotent(HttpMethod method) {
+            return method != HttpMethod.POST;
+        }
+
+        /**
+         * @return name of the endpoint prefixed by its API, such as {@code Model.PREDICT}
+         */
+        default String getQualifiedName() {
+            return getClass().getSimpleName() + "." + this;
+        }
     }
 }
@@ -0,0 +1,153 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
+
+/**
+ * Dispatches a batch as one asynchronous call per chunk of items, usually an {@link InsightCall} enqueued on an
+ * {@link InsightClient}, see {@link #of(InsightClient, Function, int, int)}.
+ * <p>
+ * The batch is split into chunks of {@code chunkSize} consecutive items, each chunk is sent in a single call
+ * returning the result of each of its items. The chunks are run through a {@link Pipeline} of {@code parallelism}
+ * lanes, so that no more than {@code parallelism} calls of the batch are in flight on the shared pool. Results are
+ * returned in input order; a failed call fails the items of its chunk only, reported as failed {@link BatchResult}s.
+ */
+public class BatchDispatcher<I, T> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 16;
+
+    protected final Pipeline<List<I>, List<T>> pipeline;
+
+    protected final int chunkSize;
+
+    /**
+     * @param caller      starting the call of a chunk, completed with the result of each item of the chunk in order
+     * @param chunkSize   number of consecutive items sent in one call
+     * @param parallelism maximal number of lanes, hence of calls in flight
+     */
+    public BatchDispatcher(Function<? super List<I>, ? extends CompletableFuture<List<T>>> caller, int chunkSize,
+            int parallelism) {
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+        }
+
+        this.pipeline = new Pipeline<>(caller, parallelism);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param client   {@link InsightClient} enqueuing the calls
+     * @param preparer preparing the {@link InsightCall} of a chunk
+     * @return {@link BatchDispatcher} of the prepared calls
+     */
+    public static <I, T> BatchDispatcher<I, T> of(InsightClient client,
+            Function<? super List<I>, InsightCall<List<T>>> preparer, int chunkSize, int parallelism) {
+        return new BatchDispatcher<>(item -> client.enqueue(preparer.apply(item)), chunkSize, parallelism);
+    }
+
+    /**
+     * @param items to dispatch
+     * @return {@link CompletableFuture} of the results in the order of the items, never completed exceptionally;
+     * cancelling it stops dispatching the pending items
+     */
+    public CompletableFuture<List<BatchResult<T>>> dispatch(List<I> items) {
+        CompletableFuture<List<BatchResult<T>>> future = new CompletableFuture<>();
+        if (items.isEmpty()) {
+            future.complete(Collections.emptyList());
+            return future;
+        }
+
+        AtomicReferenceArray<BatchResult<T>> results = new AtomicReferenceArray<>(items.size());
+        CompletableFuture<Pipeline.Summary> run = pipeline.run(new Chunks(items),
+                (chunk, result) -> complete(results, result.getIndex() * chunkSize, chunk.size(), result));
+        run.whenComplete((summary, failure) -> {
+            List<BatchResult<T>> list = new ArrayList<>(results.length());
+            for (int i = 0; i < results.length(); i++) {
+                list.add(results.get(i));
+            }
+            future.complete(list);
+        });
+        future.whenComplete((list, failure) -> run.cancel(false));
+        return future;
+    }
+
+    /**
+     * Sets the result of each item of the chunk starting at the given index.
+     */
+    protected void complete(AtomicReferenceArray<BatchResult<T>> results, int start, int size,
+            BatchResult<List<T>> result) {
+        Throwable failure = result.isSuccess() ? null : result.getFailure();
+        List<T> values = result.isSuccess() ? result.getValue() : null;
+        if (failure == null && values.size() != size) {
+            failure = new UnexpectedResponseException("Expected " + size + " results but got " + values.size());
+        }
+
+        for (int i = 0; i < size; i++) {
+            int index = start + i;
+            if (failure != null) {
+                results.set(index, BatchResult.failure(index, failure));
+            } else if (values.get(i) == null) {
+                results.set(index, BatchResult.failure(index,
+                        new UnexpectedResponseException("No result for item " + index)));
+            } else {
+                results.set(index, BatchResult.success(index, values.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Consecutive chunks of the items, as views of the list.
+     */
+    protected class Chunks implements Iterator<List<I>> {
+
+        protected final List<I> items;
+
+        protected int start;
+
+        protected Chunks(List<I> items) {
+            this.items = items;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return start < items.size();
+        }
+
+        @Override
+        public List<I> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int end = (int) Math.min((long) start + chunkSize, items.size());
+            List<I> chunk = items.subList(start, end);
+            start = end;
+            return chunk;
+        }
+    }
+}
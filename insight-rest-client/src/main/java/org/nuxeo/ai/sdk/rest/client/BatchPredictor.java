@@ -0,0 +1,283 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import static org.nuxeo.ai.sdk.rest.client.InsightClient.MAPPER;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.objects.InsightResponse;
+import org.nuxeo.ai.sdk.objects.ScoredLabels;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import org.nuxeo.ai.sdk.rest.ResponseHandler;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import okhttp3.Response;
+
+/**
+ * Predicts several {@link TensorInstances} of a model with a single call to {@link API.Model#PREDICT}.
+ * The instances of every item travel in one payload, the results of the response are handed back to each item in
+ * order, the results of an item holding several instances being merged as a single {@link InsightResponse}.
+ * <p>
+ * When the {@link PredictCache} is enabled the cached items are not sent, and the results of every predicted item
+ * are stored under its own key as the body of a single prediction.
+ */
+public class BatchPredictor {
+
+    private static final Logger log = LogManager.getLogger(BatchPredictor.class);
+
+    protected static final String RESULTS = "results";
+
+    protected final InsightClient client;
+
+    protected final int topK;
+
+    protected final float minConfidence;
+
+    protected final ObjectReader predictReader;
+
+    public BatchPredictor(InsightClient client) {
+        InsightConfiguration configuration = client.getConfiguration();
+        this.client = client;
+        this.topK = configuration.getPredictTopK();
+        this.minConfidence = configuration.getPredictMinConfidence() > 0 ? configuration.getPredictMinConfidence() :
+                Float.NEGATIVE_INFINITY;
+        this.predictReader = InsightResponse.reader(MAPPER, topK, minConfidence);
+    }
+
+    /**
+     * @param modelName  name of the model
+     * @param datasource datasource of the model
+     * @param items      {@link TensorInstances} to predict
+     * @return {@link CompletableFuture} of the prediction of every item in input order, completed exceptionally when
+     * the call failed or its results do not match the instances
+     */
+    public CompletableFuture<List<InsightResponse>> predict(String modelName, @Nullable String datasource,
+            List<TensorInstances> items) {
+        PredictCache cache = client.getPredictCache();
+        if (cache == null) {
+            return send(modelName, datasource, items);
+        }
+
+        InsightResponse[] responses = new InsightResponse[items.size()];
+        List<TensorInstances> uncached = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                responses[i] = cached(cache, PredictCache.key(modelName, datasource, items.get(i)));
+                if (responses[i] == null) {
+                    uncached.add(items.get(i));
+                    positions.add(i);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            return failed(e);
+        }
+
+        if (uncached.isEmpty()) {
+            return CompletableFuture.completedFuture(Arrays.asList(responses));
+        }
+        return send(modelName, datasource, uncached).thenApply(predicted -> {
+            for (int i = 0; i < predicted.size(); i++) {
+                responses[positions.get(i)] = predicted.get(i);
+            }
+            return Arrays.asList(responses);
+        });
+    }
+
+    /**
+     * Predicts the items without looking them up in the {@link PredictCache}, their results are still stored.
+     */
+    protected CompletableFuture<List<InsightResponse>> send(String modelName, @Nullable String datasource,
+            List<TensorInstances> items) {
+        if (items.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        List<Map<String, TensorInstances.Tensor>> instances = new ArrayList<>();
+        items.forEach(item -> {
+            if (item.instances != null) {
+                instances.addAll(item.instances);
+            }
+        });
+        TensorInstances payload = items.size() == 1 ? items.get(0) : new TensorInstances(null, instances);
+        String path = API.Model.PREDICT.toPath(client.getProjectId(), modelName, datasource);
+        try {
+            return client.enqueue(InsightCall.post(API.Model.PREDICT, path, MAPPER.writeValueAsString(payload),
+                    handler(modelName, datasource, items)));
+        } catch (JsonProcessingException | RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    protected ResponseHandler<List<InsightResponse>> handler(String modelName, @Nullable String datasource,
+            List<TensorInstances> items) {
+        return response -> {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new UnexpectedResponseException(
+                        "Failed to predict batch with code " + response.code() + " and reason " + response.message(),
+                        response.code());
+            }
+
+            return client.getPredictCache() != null ? cache(modelName, datasource, items, response) :
+                    split(items, read(response));
+        };
+    }
+
+    protected List<InsightResponse> read(Response response) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(response.body().byteStream())) {
+            return InsightResponse.readResults(parser, topK, minConfidence);
+        }
+    }
+
+    /**
+     * Streams the results of the response, storing the slice of each item as its own prediction body before reading
+     * it.
+     */
+    protected List<InsightResponse> cache(String modelName, @Nullable String datasource, List<TensorInstances> items,
+            Response response) throws IOException {
+        int expected = items.stream().mapToInt(BatchPredictor::count).sum();
+        try (JsonParser parser = MAPPER.getFactory().createParser(response.body().byteStream())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw mismatch(expected, 0);
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && RESULTS.equals(field)) {
+                    return cache(modelName, datasource, items, parser, expected);
+                }
+                parser.skipChildren();
+            }
+        }
+        throw mismatch(expected, 0);
+    }
+
+    /**
+     * @param parser positioned on the start of the results array
+     * @return responses of the items, only cached once every result is read and matches the items
+     */
+    protected List<InsightResponse> cache(String modelName, @Nullable String datasource, List<TensorInstances> items,
+            JsonParser parser, int expected) throws IOException {
+        List<byte[]> bodies = new ArrayList<>(items.size());
+        int read = 0;
+        for (TensorInstances item : items) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (JsonGenerator generator = MAPPER.getFactory().createGenerator(body)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart(RESULTS);
+                for (int i = 0; i < count(item); i++, read++) {
+                    if (parser.nextToken() == JsonToken.END_ARRAY) {
+                        throw mismatch(expected, read);
+                    }
+                    generator.copyCurrentStructure(parser);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+
+            bodies.add(body.toByteArray());
+        }
+
+        if (parser.nextToken() != JsonToken.END_ARRAY) {
+            do {
+                parser.skipChildren();
+                read++;
+            } while (parser.nextToken() != JsonToken.END_ARRAY);
+            throw mismatch(expected, read);
+        }
+
+        List<InsightResponse> responses = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            client.getPredictCache().put(PredictCache.key(modelName, datasource, items.get(i)), bodies.get(i));
+            responses.add(predictReader.readValue(bodies.get(i)));
+        }
+        return responses;
+    }
+
+    /**
+     * Hands each item the results of its instances, merged as a single {@link InsightResponse}.
+     */
+    protected static List<InsightResponse> split(List<TensorInstances> items, @Nullable List<InsightResponse> results) {
+        int expected = items.stream().mapToInt(BatchPredictor::count).sum();
+        if (results == null || results.size() != expected) {
+            throw mismatch(expected, results == null ? 0 : results.size());
+        }
+
+        List<InsightResponse> responses = new ArrayList<>(items.size());
+        int offset = 0;
+        for (TensorInstances item : items) {
+            int count = count(item);
+            if (count == 1) {
+                responses.add(results.get(offset));
+            } else {
+                Map<String, ScoredLabels> outputs = new HashMap<>();
+                results.subList(offset, offset + count).forEach(result -> outputs.putAll(result.getOutputs()));
+                responses.add(InsightResponse.of(outputs));
+            }
+            offset += count;
+        }
+        return responses;
+    }
+
+    @Nullable
+    protected InsightResponse cached(PredictCache cache, PredictCache.Key key) {
+        byte[] body = cache.get(key);
+        if (body == null) {
+            return null;
+        }
+
+        try {
+            return predictReader.readValue(body);
+        } catch (IOException e) {
+            log.warn("Could not read cached prediction {}", key, e);
+            return null;
+        }
+    }
+
+    protected static int count(TensorInstances item) {
+        return item.instances != null ? item.instances.size() : 0;
+    }
+
+    protected static UnexpectedResponseException mismatch(int expected, int actual) {
+        return new UnexpectedResponseException("Expected " + expected + " results but got " + actual);
+    }
+
+    protected static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Outcome of a single item of a batch dispatched by a {@link BatchDispatcher}: either its value or its failure.
+ */
+public class BatchResult<T> {
+
+    protected final int index;
+
+    protected final T value;
+
+    protected final Throwable failure;
+
+    protected BatchResult(int index, T value, Throwable failure) {
+        this.index = index;
+        this.value = value;
+        this.failure = failure;
+    }
+
+    public static <T> BatchResult<T> success(int index, T value) {
+        return new BatchResult<>(index, Objects.requireNonNull(value), null);
+    }
+
+    public static <T> BatchResult<T> failure(int index, Throwable failure) {
+        return new BatchResult<>(index, null, Objects.requireNonNull(failure));
+    }
+
+    /**
+     * @return position of the item in the batch
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * @return result of the item, {@code null} when it failed
+     */
+    @Nullable
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return failure of the item, {@code null} when it succeeded
+     */
+    @Nullable
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" + "index=" + index + ", value=" + value + ", failure=" + failure + '}';
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Circuit breaker of a single {@link API.Endpoint}, see {@link CircuitBreakerPolicy} for the thresholds.
+ * Every permission granted by {@link #tryAcquire()} must be followed by {@link #onResult(boolean, long)} or
+ * {@link #release()}.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LogManager.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    protected final API.Endpoint endpoint;
+
+    protected final CircuitBreakerPolicy policy;
+
+    protected final long slowCallNanos;
+
+    // ring buffer of the outcomes of the last calls
+    protected final boolean[] failures;
+
+    protected final boolean[] slows;
+
+    protected int recorded;
+
+    protected int position;
+
+    protected int failureCount;
+
+    protected int slowCount;
+
+    protected State state = State.CLOSED;
+
+    protected long openedAt;
+
+    protected int halfOpenPermits;
+
+    public CircuitBreaker(API.Endpoint endpoint, CircuitBreakerPolicy policy) {
+        this.endpoint = endpoint;
+        this.policy = policy;
+        this.slowCallNanos = policy.getSlowCallDuration().toNanos();
+        this.failures = new boolean[policy.getSlidingWindowSize()];
+        this.slows = new boolean[policy.getSlidingWindowSize()];
+    }
+
+    /**
+     * @return {@code true} when a call can be made, {@code false} when it must be rejected
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < policy.getWaitInOpenState().toNanos()) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= policy.getPermittedCallsInHalfOpenState()) {
+                return false;
+            }
+            halfOpenPermits++;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     *
+     * @param failed        whether the call failed
+     * @param durationNanos duration of the call
+     */
+    public synchronized void onResult(boolean failed, long durationNanos) {
+        if (state == State.OPEN) {
+            // outcome of a call permitted before opening
+            return;
+        }
+
+        int window = state == State.HALF_OPEN ? policy.getPermittedCallsInHalfOpenState() : failures.length;
+        if (recorded == window) {
+            failureCount -= failures[position] ? 1 : 0;
+            slowCount -= slows[position] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failures[position] = failed;
+        slows[position] = durationNanos > slowCallNanos;
+        failureCount += failed ? 1 : 0;
+        slowCount += slows[position] ? 1 : 0;
+        position = (position + 1) % window;
+
+        int minimum = state == State.HALF_OPEN ? window : policy.getMinimumCalls();
+        if (recorded < minimum) {
+            return;
+        }
+
+        if (failureCount >= policy.getFailureRateThreshold() * recorded
+                || slowCount >= policy.getSlowCallRateThreshold() * recorded) {
+            transitionTo(State.OPEN);
+        } else if (state == State.HALF_OPEN) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    /**
+     * Gives back a permission whose call was abandoned without outcome.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public API.Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    protected void transitionTo(State target) {
+        log.info("Circuit breaker of {} goes from {} to {}", endpoint.getQualifiedName(), state, target);
+        state = target;
+        recorded = 0;
+        position = 0;
+        failureCount = 0;
+        slowCount = 0;
+        halfOpenPermits = 0;
+        if (target == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.time.Duration;
+
+/**
+ * Thresholds of the {@link CircuitBreaker} guarding each {@link API.Endpoint}.
+ * <p>
+ * The outcome of the last {@code slidingWindowSize} calls is kept; once {@code minimumCalls} are recorded the breaker
+ * opens when the rate of failed calls or of calls slower than {@code slowCallDuration} reaches its threshold. It then
+ * rejects calls for {@code waitInOpenState} before letting {@code permittedCallsInHalfOpenState} trial calls decide
+ * whether to close or open again.
+ */
+public class CircuitBreakerPolicy {
+
+    /**
+     * Policy letting every call through
+     */
+    public static final CircuitBreakerPolicy DISABLED = new Builder().setEnabled(false).build();
+
+    private final boolean enabled;
+
+    private final float failureRateThreshold;
+
+    private final float slowCallRateThreshold;
+
+    private final Duration slowCallDuration;
+
+    private final int slidingWindowSize;
+
+    private final int minimumCalls;
+
+    private final Duration waitInOpenState;
+
+    private final int permittedCallsInHalfOpenState;
+
+    protected CircuitBreakerPolicy(Builder builder) {
+        if (builder.slidingWindowSize < 1 || builder.minimumCalls < 1 || builder.permittedCallsInHalfOpenState < 1) {
+            throw new IllegalArgumentException("Circuit breaker window and calls must be positive");
+        }
+
+        this.enabled = builder.enabled;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.slidingWindowSize);
+        this.waitInOpenState = builder.waitInOpenState;
+        this.permittedCallsInHalfOpenState = Math.min(builder.permittedCallsInHalfOpenState,
+                builder.slidingWindowSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return rate of failed calls, between 0 and 1, opening the breaker
+     */
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @return rate of slow calls, between 0 and 1, opening the breaker
+     */
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @return duration above which a call is considered slow
+     */
+    public Duration getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * @return number of calls to record before rates are evaluated
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public Duration getWaitInOpenState() {
+        return waitInOpenState;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+
+    public static class Builder {
+
+        private boolean enabled = true;
+
+        private float failureRateThreshold = 0.5f;
+
+        private float slowCallRateThreshold = 0.8f;
+
+        private Duration slowCallDuration = Duration.ofSeconds(30);
+
+        private int slidingWindowSize = 20;
+
+        private int minimumCalls = 10;
+
+        private Duration waitInOpenState = Duration.ofSeconds(30);
+
+        private int permittedCallsInHalfOpenState = 3;
+
+        public Builder setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder setFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder setSlowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        public Builder setSlowCallDuration(Duration slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        public Builder setSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        public Builder setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Builder setWaitInOpenState(Duration waitInOpenState) {
+            this.waitInOpenState = waitInOpenState;
+            return this;
+        }
+
+        public Builder setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        public CircuitBreakerPolicy build() {
+            return new CircuitBreakerPolicy(this);
+        }
+    }
+}
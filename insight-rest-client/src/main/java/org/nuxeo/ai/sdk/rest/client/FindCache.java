@@ -0,0 +1,267 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Cache of the similar documents found by {@link API.Dedup#FIND}, see {@link InsightConfiguration#getFindCacheSize()}.
+ * <p>
+ * Lookups are keyed by the project, the document, the xpath and the distance, or by the digest of the instances
+ * when searching by tensor. The cache holds at most {@link InsightConfiguration#getFindCacheSize()} lookups, evicting
+ * the least recently used first, for {@link InsightConfiguration#getFindCacheTtl()}. The index calls of the same
+ * client invalidate the lookups they may change: indexing a document drops every lookup of its xpath, deleting it
+ * drops its own lookups and those listing it, dropping the index or recalculating the tuples drops the project.
+ * A lookup issued before an invalidation is not stored, see {@link #getGeneration()}.
+ */
+public class FindCache {
+
+    protected final int maxEntries;
+
+    protected final long ttlNanos;
+
+    // access ordered, guarded by this
+    protected final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected long generation;
+
+    protected final LongAdder hits = new LongAdder();
+
+    protected final LongAdder misses = new LongAdder();
+
+    protected final LongAdder evictions = new LongAdder();
+
+    protected final LongAdder invalidations = new LongAdder();
+
+    public FindCache(int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * @return {@link Key} of the documents similar to the given document property
+     */
+    public static Key key(String project, String docId, String xpath, int distance) {
+        return new Key(project, Objects.requireNonNull(docId), Objects.requireNonNull(xpath), distance, null);
+    }
+
+    /**
+     * @return {@link Key} of the documents similar to the given instances, within the xpath when not {@code null}
+     */
+    public static Key key(String project, @Nullable String xpath, int distance, TensorInstances instances)
+            throws JsonProcessingException {
+        return new Key(project, null, xpath, distance, PredictCache.digest(instances));
+    }
+
+    /**
+     * @return copy of the cached documents of the key, {@code null} when absent or expired
+     */
+    @Nullable
+    public synchronized List<String> get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.storedAt >= ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new ArrayList<>(entry.documents);
+    }
+
+    /**
+     * @return generation of the cache, to read before issuing a lookup and give back to
+     * {@link #put(Key, List, long)}
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores the documents found, unless an invalidation happened since the lookup was issued.
+     *
+     * @param generation {@link #getGeneration()} read before issuing the lookup
+     */
+    public synchronized void put(Key key, List<String> documents, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+
+        entries.put(key, new Entry(unmodifiableList(new ArrayList<>(documents))));
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops the lookups a document indexed with the xpath may appear in.
+     */
+    public void invalidateXpath(String project, String xpath) {
+        invalidate((key, documents) -> key.project.equals(project) && key.matchesXpath(xpath));
+    }
+
+    /**
+     * Drops the lookups of a document removed from the index, and those listing it.
+     *
+     * @param xpath removed xpath, {@code null} when every xpath of the document is removed
+     */
+    public void invalidateDeleted(String project, String docId, @Nullable String xpath) {
+        invalidate((key, documents) -> key.project.equals(project) && (xpath == null || key.matchesXpath(xpath))
+                && (docId.equals(key.docId) || documents.contains(docId)));
+    }
+
+    /**
+     * Drops every lookup of the project.
+     */
+    public void invalidateProject(String project) {
+        invalidate((key, documents) -> key.project.equals(project));
+    }
+
+    public void invalidateAll() {
+        invalidate((key, documents) -> true);
+    }
+
+    protected synchronized void invalidate(BiPredicate<Key, List<String>> affected) {
+        generation++;
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (affected.test(entry.getKey(), entry.getValue().documents)) {
+                it.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of lookups dropped by the index calls
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    protected static class Entry {
+
+        protected final List<String> documents;
+
+        protected final long storedAt = System.nanoTime();
+
+        protected Entry(List<String> documents) {
+            this.documents = documents;
+        }
+    }
+
+    /**
+     * Similar documents lookup, by document or by content
+     */
+    public static class Key {
+
+        protected final String project;
+
+        protected final String docId;
+
+        protected final String xpath;
+
+        protected final int distance;
+
+        protected final String digest;
+
+        public Key(@Nonnull String project, @Nullable String docId, @Nullable String xpath, int distance,
+                @Nullable String digest) {
+            this.project = Objects.requireNonNull(project);
+            this.docId = docId;
+            this.xpath = xpath;
+            this.distance = distance;
+            this.digest = digest;
+        }
+
+        /**
+         * @return {@code true} when the lookup searches the given xpath, lookups by content without xpath search them
+         * all
+         */
+        protected boolean matchesXpath(String xpath) {
+            return this.xpath == null || this.xpath.equals(xpath);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return distance == key.distance && project.equals(key.project) && Objects.equals(docId, key.docId)
+                    && Objects.equals(xpath, key.xpath) && Objects.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(project, docId, xpath, distance, digest);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + "project='" + project + '\'' + ", docId='" + docId + '\'' + ", xpath='" + xpath + '\''
+                    + ", distance=" + distance + ", digest='" + digest + '\'' + '}';
+        }
+    }
+}
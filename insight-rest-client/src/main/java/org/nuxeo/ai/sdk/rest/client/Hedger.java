@@ -0,0 +1,214 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedges slow calls according to a {@link HedgingPolicy}: when an attempt gets no response within the hedging delay
+ * of its endpoint, a second identical attempt is made. The first successful response wins and the other attempt is
+ * cancelled; a failed attempt only wins once the other one failed too.
+ */
+public class Hedger {
+
+    protected final HedgingPolicy policy;
+
+    protected final RetryBudget budget;
+
+    protected final Map<API.Endpoint, LatencySamples> latencies = new ConcurrentHashMap<>();
+
+    protected final LongAdder hedges = new LongAdder();
+
+    protected final LongAdder wins = new LongAdder();
+
+    public Hedger(HedgingPolicy policy) {
+        this.policy = policy;
+        this.budget = new RetryBudget(policy.getMaxHedgeRatio(), policy.getBudgetCapacity());
+    }
+
+    /**
+     * @return {@code true} when the call is hedged: an idempotent, non streaming call to a hedged endpoint
+     */
+    public boolean isHedged(InsightCall<?> call) {
+        return call.getEndpoint() != null && policy.getEndpoints().contains(call.getEndpoint())
+                && call.isIdempotent() && !call.isStreaming();
+    }
+
+    /**
+     * @param call    {@link InsightCall} to hedge
+     * @param attempt making an attempt of the call
+     * @return {@link CompletableFuture} of the winning attempt; cancelling it cancels every attempt
+     */
+    public <T> CompletableFuture<T> hedge(InsightCall<T> call, Supplier<CompletableFuture<T>> attempt) {
+        budget.deposit();
+        Race<T> race = new Race<>(call.getEndpoint());
+        race.launch(attempt, false);
+        if (!race.result.isDone()) {
+            ScheduledFuture<?> timer = InsightClient.SCHEDULER.schedule(() -> {
+                if (!race.result.isDone() && budget.tryAcquire()) {
+                    hedges.increment();
+                    race.launch(attempt, true);
+                }
+            }, getDelayNanos(call.getEndpoint()), TimeUnit.NANOSECONDS);
+            race.result.whenComplete((result, failure) -> timer.cancel(false));
+        }
+        return race.result;
+    }
+
+    /**
+     * @return delay before hedging a call to the endpoint
+     */
+    public long getDelayNanos(API.Endpoint endpoint) {
+        LatencySamples samples = latencies.get(endpoint);
+        long delay = samples != null ? samples.getPercentile() : -1;
+        return delay >= 0 ? delay : policy.getDelay().toNanos();
+    }
+
+    /**
+     * @return number of hedged attempts made
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return number of calls won by their hedged attempt
+     */
+    public long getWins() {
+        return wins.sum();
+    }
+
+    protected void record(API.Endpoint endpoint, long nanos) {
+        if (policy.getPercentile() > 0) {
+            latencies.computeIfAbsent(endpoint, key -> new LatencySamples(policy.getSampleSize(),
+                    policy.getPercentile())).record(nanos);
+        }
+    }
+
+    /**
+     * Attempts of a call racing for its result
+     */
+    protected class Race<T> {
+
+        protected final CompletableFuture<T> result = new CompletableFuture<>();
+
+        protected final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+
+        protected final API.Endpoint endpoint;
+
+        protected final long start = System.nanoTime();
+
+        protected int running;
+
+        protected Race(API.Endpoint endpoint) {
+            this.endpoint = endpoint;
+            result.whenComplete((value, failure) -> cancelAttempts());
+        }
+
+        protected synchronized void launch(Supplier<CompletableFuture<T>> attempt, boolean hedged) {
+            if (result.isDone()) {
+                return;
+            }
+
+            CompletableFuture<T> future = attempt.get();
+            attempts.add(future);
+            running++;
+            future.whenComplete((value, failure) -> settle(value, failure, hedged));
+        }
+
+        protected synchronized void settle(T value, Throwable failure, boolean hedged) {
+            running--;
+            if (result.isDone() || failure == null && value == null && running > 0) {
+                return;
+            }
+
+            if (failure == null) {
+                if (value != null) {
+                    record(endpoint, System.nanoTime() - start);
+                    if (hedged) {
+                        wins.increment();
+                    }
+                }
+                result.complete(value);
+            } else if (running == 0) {
+                result.completeExceptionally(
+                        failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() :
+                                failure);
+            }
+        }
+
+        protected void cancelAttempts() {
+            List<CompletableFuture<T>> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(attempts);
+            }
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Ring buffer of the last latencies of an endpoint, the percentile is refreshed every eighth of the buffer
+     */
+    protected static class LatencySamples {
+
+        protected final long[] values;
+
+        protected final double percentile;
+
+        protected int count;
+
+        protected int position;
+
+        protected long cached = -1;
+
+        protected LatencySamples(int size, double percentile) {
+            this.values = new long[size];
+            this.percentile = percentile;
+        }
+
+        protected synchronized void record(long nanos) {
+            values[position] = nanos;
+            position = (position + 1) % values.length;
+            count = Math.min(count + 1, values.length);
+            if (count == values.length && position % Math.max(1, values.length / 8) == 0) {
+                long[] sorted = values.clone();
+                Arrays.sort(sorted);
+                cached = sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+            }
+        }
+
+        /**
+         * @return percentile of the recorded latencies, -1 until the buffer is full
+         */
+        protected synchronized long getPercentile() {
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hedging of the calls to Insight Cloud, see {@link Hedger}.
+ * <p>
+ * When an idempotent call to one of the hedged {@code endpoints} gets no response within the hedging delay, an
+ * identical call is sent and the first response wins. The delay is the {@code percentile} of the last
+ * {@code sampleSize} latencies of the endpoint once they are recorded, the fixed {@code delay} until then or when the
+ * percentile is zero. Each call earns {@code maxHedgeRatio} of a hedge, each hedge spends a full one and no more than
+ * {@code budgetCapacity} hedges can be saved up: the extra load stays bounded by the ratio.
+ */
+public class HedgingPolicy {
+
+    /**
+     * Policy never hedging calls
+     */
+    public static final HedgingPolicy DISABLED = new Builder().setEnabled(false).build();
+
+    private final boolean enabled;
+
+    private final Duration delay;
+
+    private final double percentile;
+
+    private final int sampleSize;
+
+    private final double maxHedgeRatio;
+
+    private final int budgetCapacity;
+
+    private final Set<API.Endpoint> endpoints;
+
+    protected HedgingPolicy(Builder builder) {
+        if (builder.delay.isNegative() || builder.percentile < 0 || builder.percentile > 1 || builder.sampleSize < 1
+                || builder.maxHedgeRatio < 0 || builder.budgetCapacity < 0) {
+            throw new IllegalArgumentException("Hedging delay, percentile, samples and budget must be positive");
+        }
+
+        this.enabled = builder.enabled;
+        this.delay = builder.delay;
+        this.percentile = builder.percentile;
+        this.sampleSize = builder.sampleSize;
+        this.maxHedgeRatio = builder.maxHedgeRatio;
+        this.budgetCapacity = builder.budgetCapacity;
+        this.endpoints = Collections.unmodifiableSet(new HashSet<>(builder.endpoints));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return delay before hedging until enough latencies are recorded
+     */
+    public Duration getDelay() {
+        return delay;
+    }
+
+    /**
+     * @return percentile of the recent latencies used as hedging delay, between 0 and 1, 0 to always use
+     * {@link #getDelay()}
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @return number of recent latencies the percentile is computed on
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return hedges earned by each call made
+     */
+    public double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    /**
+     * @return maximal number of hedges that can be saved up
+     */
+    public int getBudgetCapacity() {
+        return budgetCapacity;
+    }
+
+    /**
+     * @return {@link API.Endpoint}s whose idempotent calls are hedged
+     */
+    public Set<API.Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public static class Builder {
+
+        private boolean enabled = true;
+
+        private Duration delay = Duration.ofMillis(100);
+
+        private double percentile = 0.95;
+
+        private int sampleSize = 100;
+
+        private double maxHedgeRatio = 0.05;
+
+        private int budgetCapacity = 10;
+
+        private Set<API.Endpoint> endpoints = new HashSet<>(
+                Arrays.asList(API.Model.PREDICT, API.Model.ALL, API.Model.PUBLISHED, API.Model.BY_DATASOURCE,
+                        API.Dedup.FIND));
+
+        public Builder setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder setDelay(Duration delay) {
+            this.delay = delay;
+            return this;
+        }
+
+        public Builder setPercentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        public Builder setSampleSize(int sampleSize) {
+            this.sampleSize = sampleSize;
+            return this;
+        }
+
+        public Builder setMaxHedgeRatio(double maxHedgeRatio) {
+            this.maxHedgeRatio = maxHedgeRatio;
+            return this;
+        }
+
+        public Builder setBudgetCapacity(int budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+            return this;
+        }
+
+        public Builder setEndpoints(API.Endpoint... endpoints) {
+            this.endpoints = new HashSet<>(Arrays.asList(endpoints));
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
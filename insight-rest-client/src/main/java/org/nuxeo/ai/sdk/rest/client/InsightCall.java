@@ -0,0 +1,137 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import static java.util.Collections.emptyMap;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.nuxeo.ai.sdk.rest.ResponseHandler;
+
+/**
+ * A prepared call to Insight Cloud: the endpoint it targets, HTTP method, path relative to the API root, headers,
+ * JSON payload and the handler of the response.
+ * The same call can be executed with {@link InsightClient#execute(InsightCall)} or dispatched asynchronously with
+ * {@link InsightClient#enqueue(InsightCall)}.
+ */
+public class InsightCall<T> {
+
+    protected final API.Endpoint endpoint;
+
+    protected final API.HttpMethod method;
+
+    protected final String path;
+
+    protected final Map<String, Serializable> headers;
+
+    protected final String json;
+
+    protected final ResponseHandler<T> handler;
+
+    public InsightCall(@Nullable API.Endpoint endpoint, @Nonnull API.HttpMethod method, @Nonnull String path,
+            @Nonnull Map<String, Serializable> headers, @Nullable String json, @Nullable ResponseHandler<T> handler) {
+        Objects.requireNonNull(method);
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(headers);
+
+        this.endpoint = endpoint;
+        this.method = method;
+        this.path = path;
+        this.headers = headers;
+        this.json = json;
+        this.handler = handler;
+    }
+
+    public static <T> InsightCall<T> get(API.Endpoint endpoint, String path, ResponseHandler<T> handler) {
+        return get(endpoint, path, emptyMap(), handler);
+    }
+
+    public static <T> InsightCall<T> get(API.Endpoint endpoint, String path, Map<String, Serializable> headers,
+            ResponseHandler<T> handler) {
+        return new InsightCall<>(endpoint, API.HttpMethod.GET, path, headers, null, handler);
+    }
+
+    public static <T> InsightCall<T> post(API.Endpoint endpoint, String path, String json,
+            ResponseHandler<T> handler) {
+        return new InsightCall<>(endpoint, API.HttpMethod.POST, path, emptyMap(), json, handler);
+    }
+
+    public static <T> InsightCall<T> put(API.Endpoint endpoint, String path, String json,
+            ResponseHandler<T> handler) {
+        return new InsightCall<>(endpoint, API.HttpMethod.PUT, path, emptyMap(), json, handler);
+    }
+
+    public static <T> InsightCall<T> delete(API.Endpoint endpoint, String path, String json,
+            ResponseHandler<T> handler) {
+        return new InsightCall<>(endpoint, API.HttpMethod.DELETE, path, emptyMap(), json, handler);
+    }
+
+    /**
+     * @return {@link API.Endpoint} targeted by the call, {@code null} for raw calls made through
+     * {@link InsightClient#get} and siblings
+     */
+    @Nullable
+    public API.Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    @Nonnull
+    public API.HttpMethod getMethod() {
+        return method;
+    }
+
+    @Nonnull
+    public String getPath() {
+        return path;
+    }
+
+    @Nonnull
+    public Map<String, Serializable> getHeaders() {
+        return headers;
+    }
+
+    @Nullable
+    public String getJson() {
+        return json;
+    }
+
+    @Nullable
+    public ResponseHandler<T> getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return {@code true} when repeating the call is safe, see {@link API.Endpoint#isIdempotent(API.HttpMethod)}
+     */
+    public boolean isIdempotent() {
+        return endpoint != null ? endpoint.isIdempotent(method) : method != API.HttpMethod.POST;
+    }
+
+    /**
+     * @return {@code true} when the handler result keeps reading the response body, see
+     * {@link ResponseHandler#isStreaming()}
+     */
+    public boolean isStreaming() {
+        return handler != null && handler.isStreaming();
+    }
+}
@@ -25,20 +25,39 @@ import static org.nuxeo.client.ConstantsV1.API_PATH;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.objects.InsightResponse;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import org.nuxeo.ai.sdk.objects.deduplication.ScrollableResult;
+import org.nuxeo.ai.sdk.rest.CompressionInterceptor;
 import org.nuxeo.ai.sdk.rest.LogInterceptor;
+import org.nuxeo.ai.sdk.rest.MetricsInterceptor;
 import org.nuxeo.ai.sdk.rest.ResponseHandler;
 import org.nuxeo.ai.sdk.rest.api.DedupCaller;
 import org.nuxeo.ai.sdk.rest.api.ExportCaller;
 import org.nuxeo.ai.sdk.rest.api.ModelCaller;
 import org.nuxeo.ai.sdk.rest.api.Resource;
+import org.nuxeo.ai.sdk.rest.exception.CircuitBreakerOpenException;
 import org.nuxeo.ai.sdk.rest.exception.ConfigurationException;
+import org.nuxeo.ai.sdk.rest.exception.RateLimitExceededException;
+import org.nuxeo.ai.sdk.rest.metrics.MetricsRegistry;
 import org.nuxeo.client.NuxeoClient;
 import org.nuxeo.client.marshaller.NuxeoConverterFactory;
 import org.nuxeo.client.objects.upload.BatchUpload;
@@ -46,7 +65,16 @@ import org.nuxeo.client.spi.auth.BasicAuthInterceptor;
 import org.nuxeo.client.spi.auth.TokenAuthInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * REST Client to Insight Cloud
@@ -61,13 +89,72 @@ public class InsightClient {
 
     public static final ObjectMapper MAPPER = new ObjectMapper();
 
+    public static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+    protected static final String LOGIN_PATH = "automation/login";
+
+    /**
+     * Schedules delayed work such as retries of asynchronous calls, the work itself is handed back to the dispatcher
+     */
+    protected static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "insight-client-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final InsightConfiguration configuration;
 
-    private NuxeoClient client;
+    private final CompressionInterceptor compressionInterceptor;
+
+    private final RetryBudget retryBudget;
+
+    private final Map<API.Endpoint, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final ModelCache modelCache;
+
+    private final PredictCache predictCache;
+
+    private final FindCache findCache;
+
+    private final SingleFlight singleFlight;
+
+    private final PredictBatcher predictBatcher;
+
+    private final Hedger hedger;
+
+    /**
+     * Published after {@link #httpClient} so that a connected client is always fully initialized
+     */
+    private volatile NuxeoClient client;
+
+    /**
+     * Client dispatching the calls to Insight API, shares authentication and timeouts with {@link #client}.
+     * Headers are attached to each request, the client itself is never mutated and can be shared by all threads.
+     */
+    private volatile OkHttpClient httpClient;
 
     public InsightClient(InsightConfiguration configuration) {
         Objects.requireNonNull(configuration);
         this.configuration = configuration;
+        this.compressionInterceptor = new CompressionInterceptor(configuration.getCompressionThreshold());
+        this.retryBudget = new RetryBudget(configuration.getRetryPolicy());
+        Duration modelCacheTtl = configuration.getModelCacheTtl();
+        this.modelCache = modelCacheTtl.isZero() || modelCacheTtl.isNegative() ? null :
+                new ModelCache(this, modelCacheTtl);
+        this.singleFlight = configuration.isCoalescing() ? new SingleFlight() : null;
+        this.predictCache = configuration.getPredictCacheMaxBytes() <= 0 ? null :
+                new PredictCache(configuration.getPredictCacheMaxBytes(), configuration.getPredictCacheTtl());
+        if (predictCache != null && modelCache == null) {
+            log.warn("Predictions are cached for {} without model cache, a re-published model keeps serving the "
+                    + "predictions of its previous version until they expire", configuration.getPredictCacheTtl());
+        }
+        this.findCache = configuration.getFindCacheSize() <= 0 ? null :
+                new FindCache(configuration.getFindCacheSize(), configuration.getFindCacheTtl());
+        Duration batchWindow = configuration.getPredictBatchWindow();
+        this.predictBatcher = batchWindow.isZero() || batchWindow.isNegative() ? null :
+                new PredictBatcher(this, batchWindow, configuration.getPredictBatchSize());
+        this.hedger = configuration.getHedgingPolicy().isEnabled() ? new Hedger(configuration.getHedgingPolicy()) :
+                null;
     }
 
     @Nonnull
@@ -75,6 +162,79 @@ public class InsightClient {
         return configuration;
     }
 
+    /**
+     * @return {@link CompressionInterceptor} holding the bytes saved by compression, counters stay at zero unless
+     * {@link InsightConfiguration.Compression#GZIP} is configured
+     */
+    @Nonnull
+    public CompressionInterceptor getCompressionInterceptor() {
+        return compressionInterceptor;
+    }
+
+    /**
+     * @return {@link ModelCache} of the model listings, {@code null} when no TTL is configured
+     */
+    @Nullable
+    public ModelCache getModelCache() {
+        return modelCache;
+    }
+
+    /**
+     * @return {@link PredictCache} of the predictions, {@code null} when no size is configured
+     */
+    @Nullable
+    public PredictCache getPredictCache() {
+        return predictCache;
+    }
+
+    /**
+     * @return {@link FindCache} of the similar documents lookups, {@code null} when no size is configured
+     */
+    @Nullable
+    public FindCache getFindCache() {
+        return findCache;
+    }
+
+    /**
+     * @return {@link SingleFlight} coalescing identical calls, {@code null} when coalescing is disabled
+     */
+    @Nullable
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * @return {@link PredictBatcher} gathering single predictions, {@code null} when no batch window is configured
+     */
+    @Nullable
+    public PredictBatcher getPredictBatcher() {
+        return predictBatcher;
+    }
+
+    /**
+     * @return {@link Hedger} of slow calls, {@code null} when the {@link HedgingPolicy} is disabled
+     */
+    @Nullable
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+    /**
+     * @return {@link RetryBudget} bounding the retries of every call
+     */
+    @Nonnull
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @return {@link MetricsRegistry} receiving the measures of every call
+     */
+    @Nonnull
+    public MetricsRegistry getMetricsRegistry() {
+        return configuration.getMetricsRegistry();
+    }
+
     @Nonnull
     public NuxeoConverterFactory getJSONFactory() {
         return client.getConverterFactory();
@@ -84,7 +244,11 @@ public class InsightClient {
         return client.batchUploadManager().createBatch().enableChunk().chunkSize(chunkSize);
     }
 
-    public void connect() throws ConfigurationException {
+    /**
+     * Builds the clients and logs in to Insight Cloud. Concurrent calls are serialized, use {@link #getClient()} or
+     * {@link #warmUp()} to connect only once.
+     */
+    public synchronized void connect() throws ConfigurationException {
         Authentication auth = configuration.getAuthentication();
         okhttp3.Interceptor interceptor;
         switch (auth.getType()) {
@@ -111,12 +275,74 @@ public class InsightClient {
                                                                .connectTimeout(configuration.getConnectionTimeout()
                                                                                             .getSeconds());
 
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(configuration.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(configuration.getMaxRequestsPerHost());
+        ConnectionPool pool = new ConnectionPool(configuration.getMaxIdleConnections(),
+                configuration.getKeepAliveDuration().toMillis(), TimeUnit.MILLISECONDS);
+
+        OkHttpClient.Builder httpBuilder = new OkHttpClient.Builder();
+        httpBuilder.addInterceptor(interceptor)
+                   .dispatcher(dispatcher)
+                   .connectionPool(pool)
+                   .readTimeout(configuration.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                   .writeTimeout(configuration.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                   .connectTimeout(configuration.getConnectionTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        if (configuration.getCompression() == InsightConfiguration.Compression.GZIP) {
+            httpBuilder.addInterceptor(compressionInterceptor);
+        }
+
         if (log.isDebugEnabled()) {
             LogInterceptor logInterceptor = new LogInterceptor();
             builder.interceptor(logInterceptor);
+            httpBuilder.addInterceptor(logInterceptor);
+        }
+        // last application interceptor: sees connect failures, and the bodies once compressed
+        httpBuilder.addInterceptor(new MetricsInterceptor(configuration.getMetricsRegistry()));
+
+        OkHttpClient connected = httpBuilder.build();
+        NuxeoClient nuxeoClient = builder.connect();
+        httpClient = connected;
+        client = nuxeoClient;
+    }
+
+    /**
+     * Connects the client if needed, then pays upfront the costs otherwise charged to the first calls: opens
+     * {@link InsightConfiguration#getWarmUpConnections()} pooled connections, each going through the authentication
+     * handshake, and primes the Jackson caches of the payloads exchanged with Insight Cloud.
+     *
+     * @return number of connections warmed up
+     */
+    public int warmUp() throws ConfigurationException {
+        getClient();
+        primeMapper();
+
+        // concurrent calls cannot share a connection, each one opens its own and gives it back to the pool
+        int count = configuration.getWarmUpConnections();
+        List<CompletableFuture<Boolean>> handshakes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            handshakes.add(callCloudAsync(() -> newRequest(API.HttpMethod.POST, LOGIN_PATH, emptyMap(), "{}"),
+                    Response::isSuccessful));
         }
 
-        client = builder.connect();
+        int warmed = (int) handshakes.stream().map(CompletableFuture::join).filter(Boolean.TRUE::equals).count();
+        log.debug("Warmed up {} connection(s) to {}", warmed, configuration.getUrl());
+        return warmed;
+    }
+
+    /**
+     * Builds the Jackson (de)serializers of the Insight payloads, their introspection is the bulk of a first call.
+     */
+    protected static void primeMapper() {
+        try {
+            MAPPER.readValue("{\"results\":[]}", InsightResponse.class);
+            MAPPER.readValue("{\"labels\":{\"output\":[{\"name\":\"label\",\"confidence\":1}]}}",
+                    InsightResponse.class);
+            MAPPER.readerFor(ScrollableResult.class);
+            MAPPER.writeValueAsString(new TensorInstances("warm-up", Collections.emptyList()));
+        } catch (IOException e) {
+            log.debug("Could not prime JSON mapper", e);
+        }
     }
 
     public boolean isConnected() {
@@ -146,22 +372,17 @@ public class InsightClient {
     }
 
     protected NuxeoClient getClient() throws ConfigurationException {
-        if (client == null) {
-            connect();
-        }
-
-        return client;
-    }
-
-    protected NuxeoClient getClient(Map<String, Serializable> headers) throws ConfigurationException {
-        if (client == null) {
-            connect();
+        NuxeoClient connected = client;
+        if (connected == null) {
+            synchronized (this) {
+                if (client == null) {
+                    connect();
+                }
+                connected = client;
+            }
         }
 
-        headers.forEach((header, value) -> {
-            client.header(header, value);
-        });
-        return client;
+        return connected;
     }
 
     protected String getApiUrl() {
@@ -173,7 +394,7 @@ public class InsightClient {
     }
 
     public <T> T get(String url, Map<String, Serializable> headers, ResponseHandler<T> handler) {
-        return callCloud(() -> getClient(headers).get(getApiUrl() + url), handler);
+        return execute(InsightCall.get(null, url, headers, handler));
     }
 
     public <T> T post(String url, String json, ResponseHandler<T> handler) {
@@ -181,7 +402,7 @@ public class InsightClient {
     }
 
     public <T> T post(String url, Map<String, Serializable> headers, String json, ResponseHandler<T> handler) {
-        return callCloud(() -> getClient(headers).post(getApiUrl() + url, json), handler);
+        return execute(new InsightCall<>(null, API.HttpMethod.POST, url, headers, json, handler));
     }
 
     public <T> T delete(String url, String json, ResponseHandler<T> handler) {
@@ -189,7 +410,7 @@ public class InsightClient {
     }
 
     public <T> T delete(String url, Map<String, Serializable> headers, String json, ResponseHandler<T> handler) {
-        return callCloud(() -> getClient(headers).delete(getApiUrl() + url, json), handler);
+        return execute(new InsightCall<>(null, API.HttpMethod.DELETE, url, headers, json, handler));
     }
 
     public <T> T put(String url, String json, ResponseHandler<T> handler) {
@@ -197,9 +418,409 @@ public class InsightClient {
     }
 
     public <T> T put(String url, Map<String, Serializable> headers, String json, ResponseHandler<T> handler) {
-        return callCloud(() -> getClient(headers).put(getApiUrl() + url, json), handler);
+        return execute(new InsightCall<>(null, API.HttpMethod.PUT, url, headers, json, handler));
+    }
+
+    /**
+     * Executes a prepared call, blocking until the response is handled.
+     * Failed attempts are retried according to the {@link RetryPolicy} of the configuration, each attempt takes a
+     * permit of the {@link RateLimitPolicy}.
+     *
+     * @param call {@link InsightCall} to execute
+     * @return result of the call handler or {@code null} on failure
+     * @throws CircuitBreakerOpenException when the circuit breaker of the endpoint rejects the call
+     * @throws RateLimitExceededException  when no permit is available in non blocking mode
+     */
+    public <T> T execute(InsightCall<T> call) {
+        if (singleFlight == null || !call.isIdempotent() || call.isStreaming()) {
+            return executeOnce(call);
+        }
+
+        return join(singleFlight.execute(call, () -> CompletableFuture.completedFuture(executeOnce(call))));
+    }
+
+    protected static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Executes the call without joining an identical call in flight. Hedged calls are dispatched asynchronously and
+     * joined, see {@link Hedger}.
+     */
+    protected <T> T executeOnce(InsightCall<T> call) {
+        if (hedger != null && isConnected() && hedger.isHedged(call)) {
+            return join(enqueueOnce(call));
+        }
+
+        if (!isConnected()) {
+            log.warn("Nuxeo cloud client is not configured or unavailable.");
+            return null;
+        }
+
+        CircuitBreaker breaker = getCircuitBreaker(call.getEndpoint());
+        RateLimiter limiter = getRateLimiter(call.getEndpoint());
+        retryBudget.deposit();
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            try {
+                Request request = newRequest(call);
+                if (breaker != null && !breaker.tryAcquire()) {
+                    throw new CircuitBreakerOpenException(call.getEndpoint());
+                }
+                try {
+                    acquirePermit(call, limiter);
+                } catch (InterruptedException | RuntimeException e) {
+                    // no call is made without a permit of the rate limiter
+                    release(breaker);
+                    throw e;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    response = httpClient.newCall(request).execute();
+                } catch (IOException e) {
+                    onResult(breaker, start, true);
+                    long delay = retryDelay(call, attempt, null, e);
+                    if (delay < 0) {
+                        log.warn("IOException exception: ", e);
+                        return null;
+                    }
+                    Thread.sleep(delay);
+                    continue;
+                }
+
+                onResult(breaker, start, isFailure(response));
+                long delay = retryDelay(call, attempt, response, null);
+                if (delay >= 0) {
+                    Thread.sleep(delay);
+                    continue;
+                }
+                T result = call.getHandler() != null ? call.getHandler().handleResponse(response) : null;
+                if (result != null && call.isStreaming()) {
+                    // the result reads the body and closes it
+                    response = null;
+                }
+                return result;
+            } catch (IllegalArgumentException iae) {
+                log.warn("IllegalArgumentException exception: ", iae);
+                return null;
+            } catch (IOException e) {
+                log.warn("IOException exception: ", e);
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting to call {} {}", call.getMethod(), call.getPath());
+                return null;
+            } finally {
+                if (response != null && response.body() != null) {
+                    response.body().close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatches a prepared call without blocking the calling thread.
+     * Failed attempts are retried according to the {@link RetryPolicy} of the configuration, the next attempt is
+     * scheduled instead of holding a thread during the backoff. Likewise attempts waiting for a permit of the
+     * {@link RateLimitPolicy} are scheduled once the permit is available.
+     *
+     * @param call {@link InsightCall} to dispatch
+     * @return {@link CompletableFuture} completed with the result of the call handler or {@code null} on failure,
+     * or exceptionally with {@link CircuitBreakerOpenException} when the circuit breaker of the endpoint rejects the
+     * call and with {@link RateLimitExceededException} when no permit is available in non blocking mode; cancelling
+     * the future cancels the HTTP call, unless it is shared with other identical calls still waiting for it
+     */
+    public <T> CompletableFuture<T> enqueue(InsightCall<T> call) {
+        if (singleFlight == null || !call.isIdempotent() || call.isStreaming()) {
+            return enqueueOnce(call);
+        }
+
+        return singleFlight.execute(call, () -> enqueueOnce(call));
+    }
+
+    /**
+     * Dispatches the call without joining an identical call in flight, hedging it when the {@link HedgingPolicy}
+     * applies. The call deposits once in the {@link RetryBudget} whatever its number of hedges, which are accounted
+     * by the {@link Hedger}.
+     */
+    protected <T> CompletableFuture<T> enqueueOnce(InsightCall<T> call) {
+        if (isConnected()) {
+            retryBudget.deposit();
+        }
+        if (hedger != null && isConnected() && hedger.isHedged(call)) {
+            return hedger.hedge(call, () -> enqueueAttempt(call));
+        }
+        return enqueueAttempt(call);
+    }
+
+    /**
+     * Dispatches a single attempt of the call, retried according to the {@link RetryPolicy}.
+     */
+    protected <T> CompletableFuture<T> enqueueAttempt(InsightCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!isConnected()) {
+            log.warn("Nuxeo cloud client is not configured or unavailable.");
+            future.complete(null);
+            return future;
+        }
+
+        throttle(call, 1, future);
+        return future;
+    }
+
+    /**
+     * Dispatches the attempt once a permit of the {@link RateLimitPolicy} is available. The {@link CircuitBreaker} is
+     * checked first, so that rejected attempts neither spend a permit nor wait for one.
+     */
+    protected <T> void throttle(InsightCall<T> call, int attempt, CompletableFuture<T> future) {
+        CircuitBreaker breaker = getCircuitBreaker(call.getEndpoint());
+        if (breaker != null && !breaker.tryAcquire()) {
+            future.completeExceptionally(new CircuitBreakerOpenException(call.getEndpoint()));
+            return;
+        }
+
+        RateLimiter limiter = getRateLimiter(call.getEndpoint());
+        if (limiter == null) {
+            dispatch(call, attempt, future, breaker);
+        } else if (!configuration.getRateLimitPolicy().isBlocking()) {
+            if (limiter.tryAcquire()) {
+                dispatch(call, attempt, future, breaker);
+            } else {
+                release(breaker);
+                future.completeExceptionally(new RateLimitExceededException(getProjectId(), call.getEndpoint()));
+            }
+        } else {
+            long wait = limiter.reserve();
+            if (wait > 0) {
+                SCHEDULER.schedule(() -> dispatch(call, attempt, future, breaker), wait, TimeUnit.NANOSECONDS);
+            } else {
+                dispatch(call, attempt, future, breaker);
+            }
+        }
+    }
+
+    /**
+     * @param breaker {@link CircuitBreaker} of the endpoint, already acquired for this attempt
+     */
+    protected <T> void dispatch(InsightCall<T> call, int attempt, CompletableFuture<T> future,
+            @Nullable CircuitBreaker breaker) {
+        if (future.isDone()) {
+            release(breaker);
+            return;
+        }
+
+        Call httpCall;
+        try {
+            httpCall = httpClient.newCall(newRequest(call));
+        } catch (IllegalArgumentException iae) {
+            release(breaker);
+            log.warn("IllegalArgumentException exception: ", iae);
+            future.complete(null);
+            return;
+        }
+
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                httpCall.cancel();
+            }
+        });
+        long start = System.nanoTime();
+        httpCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call httpCall, IOException e) {
+                if (future.isDone()) {
+                    release(breaker);
+                    return;
+                }
+
+                onResult(breaker, start, true);
+                long delay = retryDelay(call, attempt, null, e);
+                if (delay < 0) {
+                    log.warn("IOException exception: ", e);
+                    future.complete(null);
+                } else {
+                    SCHEDULER.schedule(() -> throttle(call, attempt + 1, future), delay, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public void onResponse(Call httpCall, Response response) {
+                onResult(breaker, start, isFailure(response));
+                boolean streamed = false;
+                try {
+                    long delay = retryDelay(call, attempt, response, null);
+                    if (delay >= 0) {
+                        SCHEDULER.schedule(() -> throttle(call, attempt + 1, future), delay, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                    T result = call.getHandler() != null ? call.getHandler().handleResponse(response) : null;
+                    // a streaming result reads the body and closes it, unless nobody waits for it anymore
+                    streamed = future.complete(result) && result != null && call.isStreaming();
+                } catch (IOException e) {
+                    log.warn("IOException exception: ", e);
+                    future.complete(null);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    if (!streamed && response.body() != null) {
+                        response.body().close();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return {@link CircuitBreaker} guarding the endpoint, {@code null} for raw calls or when no
+     * {@link CircuitBreakerPolicy} is enabled
+     */
+    @Nullable
+    public CircuitBreaker getCircuitBreaker(@Nullable API.Endpoint endpoint) {
+        CircuitBreakerPolicy policy = configuration.getCircuitBreakerPolicy();
+        if (endpoint == null || !policy.isEnabled()) {
+            return null;
+        }
+        return circuitBreakers.computeIfAbsent(endpoint, key -> new CircuitBreaker(key, policy));
+    }
+
+    /**
+     * @return {@link RateLimiter} of the endpoint for the project of this client, {@code null} for raw calls or when
+     * the endpoint is not limited by the {@link RateLimitPolicy}
+     */
+    @Nullable
+    public RateLimiter getRateLimiter(@Nullable API.Endpoint endpoint) {
+        if (endpoint == null) {
+            return null;
+        }
+        return configuration.getRateLimitPolicy().getRateLimiter(getProjectId(), endpoint);
+    }
+
+    protected void acquirePermit(InsightCall<?> call, @Nullable RateLimiter limiter) throws InterruptedException {
+        if (limiter == null) {
+            return;
+        }
+
+        if (configuration.getRateLimitPolicy().isBlocking()) {
+            limiter.acquire();
+        } else if (!limiter.tryAcquire()) {
+            throw new RateLimitExceededException(getProjectId(), call.getEndpoint());
+        }
+    }
+
+    protected void release(@Nullable CircuitBreaker breaker) {
+        if (breaker != null) {
+            breaker.release();
+        }
+    }
+
+    protected void onResult(@Nullable CircuitBreaker breaker, long start, boolean failed) {
+        if (breaker != null) {
+            breaker.onResult(failed, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return {@code true} when the response reveals an unhealthy Insight Cloud
+     */
+    protected static boolean isFailure(Response response) {
+        return response.code() >= 500 || response.code() == 429;
+    }
+
+    /**
+     * @return delay in milliseconds before the next attempt of the call, -1 when it must not be retried
+     */
+    protected long retryDelay(InsightCall<?> call, int attempt, Response response, IOException failure) {
+        long delay = configuration.getRetryPolicy().retryDelay(call, attempt, response, failure);
+        if (delay < 0) {
+            return delay;
+        } else if (!retryBudget.tryAcquire()) {
+            log.warn("Retry budget exhausted, giving up {} {} after {} attempt(s)", call.getMethod(), call.getPath(),
+                    attempt);
+            return -1;
+        }
+
+        log.debug("Retrying {} {} in {}ms after attempt {}", call.getMethod(), call.getPath(), delay, attempt);
+        return delay;
+    }
+
+    public <T> CompletableFuture<T> getAsync(String url, ResponseHandler<T> handler) {
+        return getAsync(url, emptyMap(), handler);
+    }
+
+    public <T> CompletableFuture<T> getAsync(String url, Map<String, Serializable> headers,
+            ResponseHandler<T> handler) {
+        return enqueue(InsightCall.get(null, url, headers, handler));
+    }
+
+    public <T> CompletableFuture<T> postAsync(String url, String json, ResponseHandler<T> handler) {
+        return postAsync(url, emptyMap(), json, handler);
+    }
+
+    public <T> CompletableFuture<T> postAsync(String url, Map<String, Serializable> headers, String json,
+            ResponseHandler<T> handler) {
+        return enqueue(new InsightCall<>(null, API.HttpMethod.POST, url, headers, json, handler));
+    }
+
+    public <T> CompletableFuture<T> deleteAsync(String url, String json, ResponseHandler<T> handler) {
+        return deleteAsync(url, emptyMap(), json, handler);
+    }
+
+    public <T> CompletableFuture<T> deleteAsync(String url, Map<String, Serializable> headers, String json,
+            ResponseHandler<T> handler) {
+        return enqueue(new InsightCall<>(null, API.HttpMethod.DELETE, url, headers, json, handler));
+    }
+
+    public <T> CompletableFuture<T> putAsync(String url, String json, ResponseHandler<T> handler) {
+        return putAsync(url, emptyMap(), json, handler);
+    }
+
+    public <T> CompletableFuture<T> putAsync(String url, Map<String, Serializable> headers, String json,
+            ResponseHandler<T> handler) {
+        return enqueue(new InsightCall<>(null, API.HttpMethod.PUT, url, headers, json, handler));
     }
 
+    /**
+     * Builds the request of the call, tagged with the call itself so that interceptors know the endpoint.
+     */
+    protected Request newRequest(InsightCall<?> call) {
+        Request request = newRequest(call.getMethod(), call.getPath(), call.getHeaders(), call.getJson());
+        return request.newBuilder().tag(InsightCall.class, call).build();
+    }
+
+    /**
+     * Builds a request to Insight API, headers are scoped to this request only.
+     */
+    protected Request newRequest(API.HttpMethod method, String url, Map<String, Serializable> headers,
+            String json) {
+        Request.Builder builder = new Request.Builder().url(getApiUrl() + url).header("Accept-Encoding", "identity");
+        headers.forEach((header, value) -> builder.header(header, String.valueOf(value)));
+
+        RequestBody body = json == null ? null : RequestBody.create(JSON_MEDIA_TYPE, json);
+        switch (method) {
+        case GET:
+            return builder.get().build();
+        case POST:
+            return builder.post(body).build();
+        case PUT:
+            return builder.put(body).build();
+        case DELETE:
+            return builder.delete(body).build();
+        default:
+            throw new IllegalArgumentException("Unsupported HTTP method " + method);
+        }
+    }
+
+    /**
+     * Single attempt call, see {@link #execute(InsightCall)} for calls retried on failure.
+     */
     public <T> T callCloud(Supplier<Response> caller, ResponseHandler<T> handler) {
         Response response = null;
         try {
@@ -222,4 +843,57 @@ public class InsightClient {
         }
         return null;
     }
+
+    /**
+     * Asynchronous counterpart of {@link #callCloud(Supplier, ResponseHandler)}, the handler runs on a thread of the
+     * OkHttp dispatcher once the response is received. Single attempt, see {@link #enqueue(InsightCall)} for calls
+     * retried on failure.
+     * The supplier builds the {@link Request} instead of executing it: the call is enqueued on the dispatcher so
+     * that no caller thread blocks waiting for the {@link Response}.
+     */
+    public <T> CompletableFuture<T> callCloudAsync(Supplier<Request> caller, ResponseHandler<T> handler) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!isConnected()) {
+            log.warn("Nuxeo cloud client is not configured or unavailable.");
+            future.complete(null);
+            return future;
+        }
+
+        Call call;
+        try {
+            call = httpClient.newCall(caller.get());
+        } catch (IllegalArgumentException iae) {
+            log.warn("IllegalArgumentException exception: ", iae);
+            future.complete(null);
+            return future;
+        }
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!future.isDone()) {
+                    log.warn("IOException exception: ", e);
+                }
+                future.complete(null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody ignored = response.body()) {
+                    future.complete(handler != null ? handler.handleResponse(response) : null);
+                } catch (IOException e) {
+                    log.warn("IOException exception: ", e);
+                    future.complete(null);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
 }
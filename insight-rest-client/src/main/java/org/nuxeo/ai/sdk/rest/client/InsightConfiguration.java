@@ -21,6 +21,8 @@ package org.nuxeo.ai.sdk.rest.client;
 
 import java.time.Duration;
 import java.util.Objects;
+import org.nuxeo.ai.sdk.rest.metrics.DefaultMetricsRegistry;
+import org.nuxeo.ai.sdk.rest.metrics.MetricsRegistry;
 
 /**
  * Configuration instance that service as main credential provider via {@link Authentication}
@@ -42,19 +44,102 @@ public class InsightConfiguration {
 
     private final Duration connectionTimeout;
 
+    private final int maxIdleConnections;
+
+    private final Duration keepAliveDuration;
+
+    private final int maxRequests;
+
+    private final int maxRequestsPerHost;
+
+    private final int warmUpConnections;
+
+    private final Compression compression;
+
+    private final long compressionThreshold;
+
+    private final RetryPolicy retryPolicy;
+
+    private final CircuitBreakerPolicy circuitBreakerPolicy;
+
+    private final RateLimitPolicy rateLimitPolicy;
+
+    private final HedgingPolicy hedgingPolicy;
+
+    private final MetricsRegistry metricsRegistry;
+
+    private final Duration modelCacheTtl;
+
+    private final long predictCacheMaxBytes;
+
+    private final Duration predictCacheTtl;
+
+    private final int findCacheSize;
+
+    private final Duration findCacheTtl;
+
+    private final boolean coalescing;
+
+    private final int predictTopK;
+
+    private final float predictMinConfidence;
+
+    private final Duration predictBatchWindow;
+
+    private final int predictBatchSize;
+
     protected InsightConfiguration(String url, String projectId, String datasource, Authentication authentication,
             Duration readTimeout, Duration writeTimeout, Duration connectionTimeout) {
-        Objects.requireNonNull(url);
-        Objects.requireNonNull(projectId);
-        Objects.requireNonNull(authentication);
+        this(new Builder().setUrl(url)
+                          .setProjectId(projectId)
+                          .setDatasource(datasource)
+                          .setAuthentication(authentication)
+                          .setReadTimeout(readTimeout)
+                          .setWriteTimeout(writeTimeout)
+                          .setConnectionTimeout(connectionTimeout));
+    }
+
+    protected InsightConfiguration(Builder builder) {
+        Objects.requireNonNull(builder.url);
+        Objects.requireNonNull(builder.projectId);
+        Objects.requireNonNull(builder.authentication);
+        if (builder.maxIdleConnections < 0 || builder.maxRequests < 1 || builder.maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("Connection pool and dispatcher limits must be positive");
+        }
+        if (builder.warmUpConnections < 0) {
+            throw new IllegalArgumentException("Number of connections to warm up must be positive");
+        }
 
-        this.url = url;
-        this.projectId = projectId;
-        this.datasource = datasource;
-        this.authentication = authentication;
-        this.readTimeout = readTimeout;
-        this.writeTimeout = writeTimeout;
-        this.connectionTimeout = connectionTimeout;
+        this.url = builder.url;
+        this.projectId = builder.projectId;
+        this.datasource = builder.datasource;
+        this.authentication = builder.authentication;
+        this.readTimeout = builder.readTimeout;
+        this.writeTimeout = builder.writeTimeout;
+        this.connectionTimeout = builder.connectionTimeout;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveDuration = builder.keepAliveDuration;
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.warmUpConnections = Math.min(builder.warmUpConnections, builder.maxIdleConnections);
+        this.compression = builder.compression;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.retryPolicy = Objects.requireNonNull(builder.retryPolicy);
+        this.circuitBreakerPolicy = Objects.requireNonNull(builder.circuitBreakerPolicy);
+        this.rateLimitPolicy = Objects.requireNonNull(builder.rateLimitPolicy);
+        this.hedgingPolicy = Objects.requireNonNull(builder.hedgingPolicy);
+        this.modelCacheTtl = Objects.requireNonNull(builder.modelCacheTtl);
+        this.predictCacheMaxBytes = builder.predictCacheMaxBytes;
+        this.predictCacheTtl = Objects.requireNonNull(builder.predictCacheTtl);
+        this.findCacheSize = builder.findCacheSize;
+        this.findCacheTtl = Objects.requireNonNull(builder.findCacheTtl);
+        this.coalescing = builder.coalescing;
+        this.predictTopK = builder.predictTopK;
+        this.predictMinConfidence = builder.predictMinConfidence;
+        this.predictBatchWindow = Objects.requireNonNull(builder.predictBatchWindow);
+        this.predictBatchSize = builder.predictBatchSize;
+        this.metricsRegistry = builder.metricsRegistry != null ? builder.metricsRegistry :
+                new DefaultMetricsRegistry();
     }
 
     public String getUrl() {
@@ -85,6 +170,175 @@ public class InsightConfiguration {
         return connectionTimeout;
     }
 
+    /**
+     * @return maximum number of idle connections kept in the pool
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * @return how long an idle connection is kept in the pool before being evicted
+     */
+    public Duration getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * @return maximum number of requests executed concurrently by the asynchronous dispatcher
+     */
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @return maximum number of requests executed concurrently by the asynchronous dispatcher for one host
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * @return number of pooled connections opened by {@link InsightClient#warmUp()}, at most the maximum number of
+     * idle connections
+     */
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return minimal size in bytes of a request body to compress when {@link Compression#GZIP} is enabled
+     */
+    public long getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public CircuitBreakerPolicy getCircuitBreakerPolicy() {
+        return circuitBreakerPolicy;
+    }
+
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    /**
+     * @return {@link HedgingPolicy} of slow idempotent calls, {@link HedgingPolicy#DISABLED} by default
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * @return {@link MetricsRegistry} receiving the measures of every call, a {@link DefaultMetricsRegistry} unless
+     * another one is configured
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * @return how long a model listing is served from the {@link ModelCache} before being revalidated, zero when
+     * listings are not cached
+     */
+    public Duration getModelCacheTtl() {
+        return modelCacheTtl;
+    }
+
+    /**
+     * Cached predictions are dropped when their model is re-published only through the refreshes of the
+     * {@link ModelCache}, see {@link #getModelCacheTtl()}: without it they are served until
+     * {@link #getPredictCacheTtl()} elapses.
+     *
+     * @return maximal total size in bytes of the responses kept by the {@link PredictCache}, zero when predictions
+     * are not cached
+     */
+    public long getPredictCacheMaxBytes() {
+        return predictCacheMaxBytes;
+    }
+
+    /**
+     * @return how long a prediction is served from the {@link PredictCache}
+     */
+    public Duration getPredictCacheTtl() {
+        return predictCacheTtl;
+    }
+
+    /**
+     * @return maximal number of similar documents lookups kept by the {@link FindCache}, zero when they are not
+     * cached
+     */
+    public int getFindCacheSize() {
+        return findCacheSize;
+    }
+
+    /**
+     * @return how long similar documents are served from the {@link FindCache}
+     */
+    public Duration getFindCacheTtl() {
+        return findCacheTtl;
+    }
+
+    /**
+     * Coalesced callers share the very same result instance, such as a {@link java.util.List} or an
+     * {@link org.nuxeo.ai.sdk.objects.InsightResponse}, which they must then not modify. Disabled by default.
+     *
+     * @return whether concurrent identical idempotent calls share a single request, see {@link SingleFlight}
+     */
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * @return maximal number of labels kept per output when reading a prediction, negative to keep them all
+     */
+    public int getPredictTopK() {
+        return predictTopK;
+    }
+
+    /**
+     * @return minimal confidence of the labels kept when reading a prediction
+     */
+    public float getPredictMinConfidence() {
+        return predictMinConfidence;
+    }
+
+    /**
+     * @return how long a single prediction waits for others to join its batch, zero when predictions are not batched,
+     * see {@link PredictBatcher}
+     */
+    public Duration getPredictBatchWindow() {
+        return predictBatchWindow;
+    }
+
+    /**
+     * @return number of instances sending a batch of predictions before its window elapses
+     */
+    public int getPredictBatchSize() {
+        return predictBatchSize;
+    }
+
+    /**
+     * Compression of bodies exchanged with Insight Cloud
+     */
+    public enum Compression {
+        /**
+         * Bodies travel uncompressed, {@code Accept-Encoding: identity}
+         */
+        NONE,
+        /**
+         * Request bodies above the threshold are gzipped, gzip responses are accepted and decoded
+         */
+        GZIP
+    }
+
     public static class Builder {
 
         private String url;
@@ -101,6 +355,50 @@ public class InsightConfiguration {
 
         private Duration connectionTimeout = Duration.ofSeconds(30);
 
+        private int maxIdleConnections = 32;
+
+        private Duration keepAliveDuration = Duration.ofMinutes(5);
+
+        private int maxRequests = 256;
+
+        private int maxRequestsPerHost = 64;
+
+        private int warmUpConnections = 4;
+
+        private Compression compression = Compression.NONE;
+
+        private long compressionThreshold = 1024;
+
+        private RetryPolicy retryPolicy = new RetryPolicy.Builder().build();
+
+        private CircuitBreakerPolicy circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+
+        private RateLimitPolicy rateLimitPolicy = RateLimitPolicy.UNLIMITED;
+
+        private HedgingPolicy hedgingPolicy = HedgingPolicy.DISABLED;
+
+        private MetricsRegistry metricsRegistry;
+
+        private Duration modelCacheTtl = Duration.ZERO;
+
+        private long predictCacheMaxBytes;
+
+        private Duration predictCacheTtl = Duration.ofHours(1);
+
+        private int findCacheSize;
+
+        private Duration findCacheTtl = Duration.ofMinutes(5);
+
+        private boolean coalescing;
+
+        private int predictTopK = -1;
+
+        private float predictMinConfidence;
+
+        private Duration predictBatchWindow = Duration.ZERO;
+
+        private int predictBatchSize = 32;
+
         public Builder setUrl(String url) {
             this.url = url;
             return this;
@@ -136,9 +434,122 @@ public class InsightConfiguration {
             return this;
         }
 
+        public Builder setMaxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        public Builder setKeepAliveDuration(Duration keepAliveDuration) {
+            this.keepAliveDuration = keepAliveDuration;
+            return this;
+        }
+
+        public Builder setMaxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        public Builder setMaxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public Builder setWarmUpConnections(int warmUpConnections) {
+            this.warmUpConnections = warmUpConnections;
+            return this;
+        }
+
+        public Builder setCompression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder setCompressionThreshold(long compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public Builder setCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+            this.circuitBreakerPolicy = circuitBreakerPolicy;
+            return this;
+        }
+
+        public Builder setRateLimitPolicy(RateLimitPolicy rateLimitPolicy) {
+            this.rateLimitPolicy = rateLimitPolicy;
+            return this;
+        }
+
+        public Builder setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        public Builder setMetricsRegistry(MetricsRegistry metricsRegistry) {
+            this.metricsRegistry = metricsRegistry;
+            return this;
+        }
+
+        public Builder setModelCacheTtl(Duration modelCacheTtl) {
+            this.modelCacheTtl = modelCacheTtl;
+            return this;
+        }
+
+        /**
+         * Enables the {@link PredictCache}, to combine with {@link #setModelCacheTtl(Duration)} so that the
+         * predictions of a re-published model are dropped, see {@link InsightConfiguration#getPredictCacheMaxBytes()}
+         */
+        public Builder setPredictCacheMaxBytes(long predictCacheMaxBytes) {
+            this.predictCacheMaxBytes = predictCacheMaxBytes;
+            return this;
+        }
+
+        public Builder setPredictCacheTtl(Duration predictCacheTtl) {
+            this.predictCacheTtl = predictCacheTtl;
+            return this;
+        }
+
+        public Builder setFindCacheSize(int findCacheSize) {
+            this.findCacheSize = findCacheSize;
+            return this;
+        }
+
+        public Builder setFindCacheTtl(Duration findCacheTtl) {
+            this.findCacheTtl = findCacheTtl;
+            return this;
+        }
+
+        public Builder setCoalescing(boolean coalescing) {
+            this.coalescing = coalescing;
+            return this;
+        }
+
+        public Builder setPredictTopK(int predictTopK) {
+            this.predictTopK = predictTopK;
+            return this;
+        }
+
+        public Builder setPredictMinConfidence(float predictMinConfidence) {
+            this.predictMinConfidence = predictMinConfidence;
+            return this;
+        }
+
+        public Builder setPredictBatchWindow(Duration predictBatchWindow) {
+            this.predictBatchWindow = predictBatchWindow;
+            return this;
+        }
+
+        public Builder setPredictBatchSize(int predictBatchSize) {
+            this.predictBatchSize = predictBatchSize;
+            return this;
+        }
+
         public InsightConfiguration build() {
-            return new InsightConfiguration(url, projectId, datasource, authentication, readTimeout, writeTimeout,
-                    connectionTimeout);
+            return new InsightConfiguration(this);
         }
     }
 }
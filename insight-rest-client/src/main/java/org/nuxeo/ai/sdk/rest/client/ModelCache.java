@@ -0,0 +1,266 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.objects.ModelDescriptor;
+
+/**
+ * In memory cache of the model listings of Insight Cloud, see {@link InsightConfiguration#getModelCacheTtl()}.
+ * <p>
+ * A listing is fetched on first use, then served from memory. Once older than the TTL it keeps being served while a
+ * single background call revalidates it with {@code If-None-Match}: a 304 response extends the entry, a 200 replaces
+ * it and a failure leaves the stale entry in place until the next read triggers another revalidation. When a
+ * listing changes, the predictions of the changed models are dropped from the {@link PredictCache}.
+ */
+public class ModelCache {
+
+    private static final Logger log = LogManager.getLogger(ModelCache.class);
+
+    public static final String ETAG_HEADER = "ETag";
+
+    public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    protected final InsightClient client;
+
+    protected final long ttlNanos;
+
+    protected final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public ModelCache(InsightClient client, Duration ttl) {
+        this.client = client;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * @param key    {@link Key} of the listing
+     * @param loader preparing the call fetching the listing, given the ETag to revalidate or {@code null}
+     * @return models of the listing, {@code null} when it could not be fetched
+     */
+    @Nullable
+    public List<ModelDescriptor> get(Key key, BiFunction<Key, String, InsightCall<Revision>> loader) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return store(key, client.execute(loader.apply(key, null)));
+        }
+
+        revalidateIfStale(key, entry, loader);
+        return entry.models;
+    }
+
+    /**
+     * Non blocking counterpart of {@link #get(Key, BiFunction)}, completed right away unless the listing is missing.
+     */
+    public CompletableFuture<List<ModelDescriptor>> getAsync(Key key,
+            BiFunction<Key, String, InsightCall<Revision>> loader) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return client.enqueue(loader.apply(key, null)).thenApply(revision -> store(key, revision));
+        }
+
+        revalidateIfStale(key, entry, loader);
+        return CompletableFuture.completedFuture(entry.models);
+    }
+
+    /**
+     * @return {@code true} while the listing of the given key is being revalidated in the background
+     */
+    public boolean isRevalidating(Key key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.revalidating.get();
+    }
+
+    public void invalidate(Key key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    protected List<ModelDescriptor> store(Key key, Revision revision) {
+        if (revision == null || revision.isNotModified()) {
+            return null;
+        }
+
+        Entry previous = entries.put(key, new Entry(revision.getModels(), revision.getETag()));
+        if (previous != null && !previous.models.equals(revision.getModels())) {
+            onModelsChanged(key, previous.models, revision.getModels());
+        }
+        return revision.getModels();
+    }
+
+    /**
+     * Drops the cached predictions of the models that were added, removed or updated in the listing.
+     */
+    protected void onModelsChanged(Key key, List<ModelDescriptor> previous, List<ModelDescriptor> current) {
+        log.debug("Models of {} changed", key);
+        PredictCache predictCache = client.getPredictCache();
+        if (predictCache == null) {
+            return;
+        }
+
+        Set<ModelDescriptor> changed = new HashSet<>(previous);
+        changed.removeAll(current);
+        Set<ModelDescriptor> added = new HashSet<>(current);
+        added.removeAll(previous);
+        changed.addAll(added);
+        predictCache.invalidateModels(changed.stream().map(ModelDescriptor::getName).collect(Collectors.toSet()));
+    }
+
+    protected void revalidateIfStale(Key key, Entry entry, BiFunction<Key, String, InsightCall<Revision>> loader) {
+        if (System.nanoTime() - entry.validatedAt < ttlNanos || !entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+
+        client.enqueue(loader.apply(key, entry.etag)).whenComplete((revision, failure) -> {
+            if (revision != null && revision.isNotModified()) {
+                entry.validatedAt = System.nanoTime();
+            } else if (revision != null) {
+                store(key, revision);
+            } else {
+                log.debug("Could not revalidate {}, serving stale models", key, failure);
+            }
+            entry.revalidating.set(false);
+        });
+    }
+
+    protected static class Entry {
+
+        protected final List<ModelDescriptor> models;
+
+        protected final String etag;
+
+        protected final AtomicBoolean revalidating = new AtomicBoolean();
+
+        protected volatile long validatedAt = System.nanoTime();
+
+        protected Entry(List<ModelDescriptor> models, String etag) {
+            this.models = models;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * Listing of the models of a project, by label or by datasource.
+     */
+    public static class Key {
+
+        protected final String projectId;
+
+        protected final API.Model endpoint;
+
+        protected final String label;
+
+        protected final String datasource;
+
+        public Key(@Nonnull String projectId, @Nonnull API.Model endpoint, @Nullable String label,
+                @Nullable String datasource) {
+            this.projectId = Objects.requireNonNull(projectId);
+            this.endpoint = Objects.requireNonNull(endpoint);
+            this.label = label;
+            this.datasource = datasource;
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public API.Model getEndpoint() {
+            return endpoint;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getDatasource() {
+            return datasource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return projectId.equals(key.projectId) && endpoint == key.endpoint && Objects.equals(label, key.label)
+                    && Objects.equals(datasource, key.datasource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectId, endpoint, label, datasource);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + "projectId='" + projectId + '\'' + ", endpoint=" + endpoint + ", label='" + label + '\''
+                    + ", datasource='" + datasource + '\'' + '}';
+        }
+    }
+
+    /**
+     * Outcome of a, possibly conditional, listing call.
+     */
+    public static class Revision {
+
+        public static final Revision NOT_MODIFIED = new Revision(null, null);
+
+        protected final List<ModelDescriptor> models;
+
+        protected final String etag;
+
+        public Revision(@Nullable List<ModelDescriptor> models, @Nullable String etag) {
+            this.models = models != null ? Collections.unmodifiableList(models) : null;
+            this.etag = etag;
+        }
+
+        public boolean isNotModified() {
+            return this == NOT_MODIFIED;
+        }
+
+        public List<ModelDescriptor> getModels() {
+            return models;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
+import org.nuxeo.ai.sdk.rest.metrics.LatencyHistogram;
+
+/**
+ * Pipelines one asynchronous call per item of an {@link Iterator}, usually an {@link InsightCall} enqueued on an
+ * {@link InsightClient}, see {@link #of(InsightClient, Function, int)}.
+ * <p>
+ * Items are pulled lazily, so that sources of millions of items can be processed with flat memory: at most
+ * {@code maxInFlight} lanes run concurrently, each one pulls the next item once its previous call completed. The
+ * outcome of each item is handed to a listener as soon as it is known, a failed item does not abort the others; a
+ * {@link Summary} of the run is returned once the source is exhausted. A {@link BatchDispatcher} runs the chunks of
+ * a batch through a pipeline.
+ */
+public class Pipeline<I, T> {
+
+    private static final Logger log = LogManager.getLogger(Pipeline.class);
+
+    protected final Function<? super I, ? extends CompletableFuture<T>> caller;
+
+    protected final int maxInFlight;
+
+    /**
+     * @param caller      starting the call of an item
+     * @param maxInFlight maximal number of calls in flight
+     */
+    public Pipeline(Function<? super I, ? extends CompletableFuture<T>> caller, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Number of calls in flight must be positive");
+        }
+
+        this.caller = caller;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param client   {@link InsightClient} enqueuing the calls
+     * @param preparer preparing the {@link InsightCall} of an item
+     * @return {@link Pipeline} of the prepared calls
+     */
+    public static <I, T> Pipeline<I, T> of(InsightClient client, Function<? super I, InsightCall<T>> preparer,
+            int maxInFlight) {
+        return new Pipeline<>(item -> client.enqueue(preparer.apply(item)), maxInFlight);
+    }
+
+    /**
+     * @param items    source of the items, only read by one lane at a time
+     * @param listener receiving each item with its {@link BatchResult}, indexed by position in the source; called
+     *                 concurrently from the threads completing the calls
+     * @return {@link CompletableFuture} of the {@link Summary} once every item is processed, completed exceptionally
+     * when the source fails; cancelling it stops pulling items
+     */
+    public CompletableFuture<Summary> run(Iterator<? extends I> items, BiConsumer<? super I, BatchResult<T>> listener) {
+        Run run = new Run(items, listener);
+        run.lanes.set(maxInFlight);
+        for (int i = 0; i < maxInFlight; i++) {
+            new Lane(run).run();
+        }
+        return run.future;
+    }
+
+    protected CompletableFuture<T> call(I item) {
+        try {
+            return caller.apply(item);
+        } catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    protected BatchResult<T> toResult(int index, T value, Throwable failure) {
+        if (failure != null) {
+            return BatchResult.failure(index, failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure);
+        } else if (value == null) {
+            return BatchResult.failure(index, new UnexpectedResponseException("No result for item " + index));
+        }
+        return BatchResult.success(index, value);
+    }
+
+    /**
+     * Outcome of a run: counts, throughput and latency of the calls
+     */
+    public static class Summary {
+
+        protected final long succeeded;
+
+        protected final long failed;
+
+        protected final Duration elapsed;
+
+        protected final LatencyHistogram latency;
+
+        protected Summary(long succeeded, long failed, Duration elapsed, LatencyHistogram latency) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsed = elapsed;
+            this.latency = latency;
+        }
+
+        public long getItems() {
+            return succeeded + failed;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return items processed per second
+         */
+        public double getThroughput() {
+            long nanos = elapsed.toNanos();
+            return nanos == 0 ? 0 : getItems() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        /**
+         * @return {@link LatencyHistogram} of the calls, in microseconds
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Summary{items=%d, succeeded=%d, failed=%d, elapsed=%s, throughput=%.1f/s, p50=%.1fms, "
+                            + "p99=%.1fms, max=%.1fms}", getItems(), succeeded, failed, elapsed, getThroughput(),
+                    latency.getPercentile(0.5) / 1000d, latency.getPercentile(0.99) / 1000d,
+                    latency.getMax() / 1000d);
+        }
+    }
+
+    protected class Run {
+
+        protected final Iterator<? extends I> items;
+
+        protected final BiConsumer<? super I, BatchResult<T>> listener;
+
+        protected final AtomicInteger lanes = new AtomicInteger();
+
+        protected final LongAdder succeeded = new LongAdder();
+
+        protected final LongAdder failed = new LongAdder();
+
+        protected final LatencyHistogram latency = new LatencyHistogram();
+
+        protected final long start = System.nanoTime();
+
+        protected final CompletableFuture<Summary> future = new CompletableFuture<>();
+
+        protected int count;
+
+        protected RuntimeException sourceFailure;
+
+        protected Run(Iterator<? extends I> items, BiConsumer<? super I, BatchResult<T>> listener) {
+            this.items = items;
+            this.listener = listener;
+        }
+
+        /**
+         * @return index of the next item, -1 when the source is exhausted, failed or the run cancelled
+         */
+        protected synchronized int next(Object[] holder) {
+            if (sourceFailure != null || future.isDone()) {
+                return -1;
+            }
+
+            try {
+                if (!items.hasNext()) {
+                    return -1;
+                }
+                holder[0] = items.next();
+                return count++;
+            } catch (RuntimeException e) {
+                sourceFailure = e;
+                return -1;
+            }
+        }
+
+        protected void report(I item, BatchResult<T> result, long startedAt) {
+            latency.record(System.nanoTime() - startedAt);
+            (result.isSuccess() ? succeeded : failed).increment();
+            try {
+                listener.accept(item, result);
+            } catch (RuntimeException e) {
+                log.warn("Listener failed on item {}", result.getIndex(), e);
+            }
+        }
+
+        protected void laneDone() {
+            if (lanes.decrementAndGet() == 0) {
+                RuntimeException failure;
+                synchronized (this) {
+                    failure = sourceFailure;
+                }
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(new Summary(succeeded.sum(), failed.sum(),
+                            Duration.ofNanos(System.nanoTime() - start), latency));
+                }
+            }
+        }
+    }
+
+    protected class Lane implements Runnable {
+
+        protected final Run run;
+
+        protected final Object[] holder = new Object[1];
+
+        protected Lane(Run run) {
+            this.run = run;
+        }
+
+        /**
+         * Calls the items pulled by the lane until one is pending, its completion resumes the lane.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            while (true) {
+                int index = run.next(holder);
+                if (index < 0) {
+                    run.laneDone();
+                    return;
+                }
+
+                I item = (I) holder[0];
+                holder[0] = null;
+                long startedAt = System.nanoTime();
+                CompletableFuture<T> future = call(item);
+                if (!future.isDone()) {
+                    future.whenComplete((value, failure) -> {
+                        run.report(item, toResult(index, value, failure), startedAt);
+                        run();
+                    });
+                    return;
+                }
+                run.report(item, future.handle((value, failure) -> toResult(index, value, failure)).join(),
+                        startedAt);
+            }
+        }
+    }
+}
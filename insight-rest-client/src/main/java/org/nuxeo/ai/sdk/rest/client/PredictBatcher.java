@@ -0,0 +1,209 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.nuxeo.ai.sdk.objects.InsightResponse;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+
+/**
+ * Gathers the single predictions of a model into batched calls to {@link API.Model#PREDICT}.
+ * A batch is sent once it holds {@code maxBatchSize} instances or when its window elapses, the instances of all its
+ * predictions travel in one payload and the results of the response are handed back to each prediction in order,
+ * see {@link BatchPredictor}.
+ * <p>
+ * Predictions are not looked up in the {@link PredictCache}, callers do it before joining a batch, but the results of
+ * every prediction of a batch are stored under its own key.
+ */
+public class PredictBatcher {
+
+    protected final BatchPredictor predictor;
+
+    protected final long windowNanos;
+
+    protected final int maxBatchSize;
+
+    protected final Map<Key, Batch> pending = new HashMap<>();
+
+    /**
+     * @param client       {@link InsightClient} sending the batches
+     * @param window       longest time a prediction waits for others to join its batch
+     * @param maxBatchSize number of instances sending a batch right away
+     */
+    public PredictBatcher(InsightClient client, Duration window, int maxBatchSize) {
+        if (window.isNegative() || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch window and size must be positive");
+        }
+
+        this.predictor = new BatchPredictor(client);
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param modelName  name of the model
+     * @param datasource datasource of the model
+     * @param instances  {@link TensorInstances} to predict
+     * @return {@link CompletableFuture} of the prediction, completed exceptionally when the batch failed
+     */
+    public CompletableFuture<InsightResponse> predict(String modelName, @Nullable String datasource,
+            TensorInstances instances) {
+        Key key = new Key(modelName, datasource);
+        CompletableFuture<InsightResponse> future = new CompletableFuture<>();
+        Batch full = null;
+        synchronized (pending) {
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                Batch created = new Batch(key);
+                created.timer = InsightClient.SCHEDULER.schedule(() -> flush(created), windowNanos,
+                        TimeUnit.NANOSECONDS);
+                pending.put(key, created);
+                batch = created;
+            }
+            batch.add(instances, future);
+            if (batch.size >= maxBatchSize) {
+                pending.remove(key);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            full.timer.cancel(false);
+            send(full);
+        }
+        return future;
+    }
+
+    /**
+     * Sends every pending batch without waiting for their window.
+     */
+    public void flush() {
+        List<Batch> batches;
+        synchronized (pending) {
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        batches.forEach(batch -> {
+            batch.timer.cancel(false);
+            send(batch);
+        });
+    }
+
+    /**
+     * @return number of predictions waiting for their batch to be sent
+     */
+    public int getPending() {
+        synchronized (pending) {
+            return pending.values().stream().mapToInt(batch -> batch.futures.size()).sum();
+        }
+    }
+
+    protected void flush(Batch batch) {
+        synchronized (pending) {
+            if (!pending.remove(batch.key, batch)) {
+                return;
+            }
+        }
+        send(batch);
+    }
+
+    protected void send(Batch batch) {
+        predictor.send(batch.key.modelName, batch.key.datasource, batch.instances).whenComplete(batch::complete);
+    }
+
+    protected static class Key {
+
+        protected final String modelName;
+
+        protected final String datasource;
+
+        protected Key(String modelName, String datasource) {
+            this.modelName = modelName;
+            this.datasource = datasource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(modelName, key.modelName) && Objects.equals(datasource, key.datasource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(modelName, datasource);
+        }
+    }
+
+    protected static class Batch {
+
+        protected final Key key;
+
+        protected final List<TensorInstances> instances = new ArrayList<>();
+
+        protected final List<CompletableFuture<InsightResponse>> futures = new ArrayList<>();
+
+        protected int size;
+
+        protected ScheduledFuture<?> timer;
+
+        protected Batch(Key key) {
+            this.key = key;
+        }
+
+        protected void add(TensorInstances item, CompletableFuture<InsightResponse> future) {
+            instances.add(item);
+            futures.add(future);
+            size += item.instances != null ? item.instances.size() : 0;
+        }
+
+        /**
+         * Hands each prediction its own response, or the failure of the batch.
+         */
+        protected void complete(@Nullable List<InsightResponse> responses, @Nullable Throwable failure) {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                        failure.getCause() : failure;
+                futures.forEach(future -> future.completeExceptionally(cause));
+                return;
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).complete(responses.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import static org.nuxeo.ai.sdk.rest.client.InsightClient.MAPPER;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Content addressed cache of prediction responses, see {@link InsightConfiguration#getPredictCacheMaxBytes()}.
+ * <p>
+ * Entries are keyed by the model, the datasource and a SHA-256 digest of the instances to predict, so that copies
+ * and versions of a document sharing the same content share the same prediction whatever their id. The raw response
+ * bodies are kept: the cache is bounded by their total size, evicting the least recently used entries first, and
+ * every hit deserializes a fresh response. Entries expire after {@link InsightConfiguration#getPredictCacheTtl()}
+ * and are dropped when the published models change, which is only noticed by the refreshes of the {@link ModelCache}:
+ * when it is disabled, predictions of a re-published model are served until they expire unless
+ * {@link #invalidateModels(Collection)} is called.
+ */
+public class PredictCache implements PredictCacheMXBean {
+
+    private static final Logger log = LogManager.getLogger(PredictCache.class);
+
+    protected static final ObjectWriter CONTENT_WRITER = MAPPER.writer()
+                                                               .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    protected final long maxBytes;
+
+    protected final long ttlNanos;
+
+    // access ordered, guarded by this
+    protected final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected long bytes;
+
+    protected final LongAdder hits = new LongAdder();
+
+    protected final LongAdder misses = new LongAdder();
+
+    protected final LongAdder evictions = new LongAdder();
+
+    protected ObjectName objectName;
+
+    public PredictCache(long maxBytes, Duration ttl) {
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * @return {@link Key} of the instances predicted by the given model and datasource
+     */
+    public static Key key(String modelName, String datasource, TensorInstances instances)
+            throws JsonProcessingException {
+        return new Key(modelName, datasource, digest(instances));
+    }
+
+    /**
+     * @return Base64 SHA-256 digest of the content of the instances, whatever their document id
+     */
+    public static String digest(TensorInstances instances) throws JsonProcessingException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(CONTENT_WRITER.writeValueAsBytes(instances.instances));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return cached response body of the key, {@code null} when absent or expired
+     */
+    @Nullable
+    public synchronized byte[] get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.storedAt >= ttlNanos) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.body;
+    }
+
+    public synchronized void put(Key key, byte[] body) {
+        if (body.length > maxBytes) {
+            return;
+        }
+
+        remove(key);
+        entries.put(key, new Entry(body));
+        bytes += body.length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().body.length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops the responses of the given models.
+     */
+    public synchronized void invalidateModels(Collection<String> modelNames) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (modelNames.contains(entry.getKey().modelName)) {
+                bytes -= entry.getValue().body.length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    protected void remove(Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.body.length;
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Exposes the statistics of the cache as an MXBean named after the given name.
+     */
+    public synchronized void registerMBean(String name) {
+        unregisterMBean();
+        try {
+            ObjectName target = new ObjectName(
+                    "org.nuxeo.ai.sdk.rest:type=PredictCache,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, target);
+            objectName = target;
+        } catch (JMException e) {
+            log.warn("Could not register predict cache {}", name, e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Could not unregister predict cache {}", objectName, e);
+        }
+        objectName = null;
+    }
+
+    protected static class Entry {
+
+        protected final byte[] body;
+
+        protected final long storedAt = System.nanoTime();
+
+        protected Entry(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * Prediction of a content by a model
+     */
+    public static class Key {
+
+        protected final String modelName;
+
+        protected final String datasource;
+
+        protected final String digest;
+
+        public Key(@Nonnull String modelName, @Nullable String datasource, @Nonnull String digest) {
+            this.modelName = Objects.requireNonNull(modelName);
+            this.datasource = datasource;
+            this.digest = Objects.requireNonNull(digest);
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return modelName.equals(key.modelName) && Objects.equals(datasource, key.datasource)
+                    && digest.equals(key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(modelName, datasource, digest);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + "modelName='" + modelName + '\'' + ", datasource='" + datasource + '\'' + ", digest='"
+                    + digest + '\'' + '}';
+        }
+    }
+}
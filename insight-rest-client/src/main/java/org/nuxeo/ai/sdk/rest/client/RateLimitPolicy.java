@@ -0,0 +1,144 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Client-side rate limits of the calls to Insight Cloud, each project and {@link API.Endpoint} gets its own
+ * {@link RateLimiter}.
+ * <p>
+ * Limiters live in the policy: {@link InsightClient}s configured with the same policy share the limits of a project,
+ * even across several clients. In blocking mode calls wait for their permit, otherwise calls without a permit are
+ * rejected right away with {@link org.nuxeo.ai.sdk.rest.exception.RateLimitExceededException}.
+ */
+public class RateLimitPolicy {
+
+    /**
+     * Policy letting every call through
+     */
+    public static final RateLimitPolicy UNLIMITED = new Builder().build();
+
+    private final Limit defaultLimit;
+
+    private final Map<API.Endpoint, Limit> limits;
+
+    private final boolean blocking;
+
+    private final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    protected RateLimitPolicy(Builder builder) {
+        this.defaultLimit = builder.defaultLimit;
+        this.limits = new HashMap<>(builder.limits);
+        this.blocking = builder.blocking;
+    }
+
+    /**
+     * @return {@code true} when calls wait for a permit, {@code false} when they are rejected without one
+     */
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    /**
+     * @return {@link Limit} of the endpoint, {@code null} when its calls are not limited
+     */
+    @Nullable
+    public Limit getLimit(@Nonnull API.Endpoint endpoint) {
+        return limits.getOrDefault(endpoint, defaultLimit);
+    }
+
+    /**
+     * @param projectId Insight project calling the endpoint
+     * @param endpoint  {@link API.Endpoint} called
+     * @return {@link RateLimiter} shared by the calls of the project to the endpoint, {@code null} when not limited
+     */
+    @Nullable
+    public RateLimiter getRateLimiter(@Nonnull String projectId, @Nonnull API.Endpoint endpoint) {
+        Limit limit = getLimit(endpoint);
+        if (limit == null) {
+            return null;
+        }
+        return limiters.computeIfAbsent(projectId + "/" + endpoint.getQualifiedName(),
+                key -> new RateLimiter(limit.getPermitsPerSecond(), limit.getBurst()));
+    }
+
+    public static class Limit {
+
+        private final double permitsPerSecond;
+
+        private final int burst;
+
+        public Limit(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate limit permits per second and burst must be positive");
+            }
+
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        /**
+         * @return number of calls that can be made at once after an idle period
+         */
+        public int getBurst() {
+            return burst;
+        }
+    }
+
+    public static class Builder {
+
+        private Limit defaultLimit;
+
+        private final Map<API.Endpoint, Limit> limits = new HashMap<>();
+
+        private boolean blocking = true;
+
+        /**
+         * Limits every endpoint without a limit of its own.
+         */
+        public Builder setDefaultLimit(double permitsPerSecond, int burst) {
+            this.defaultLimit = new Limit(permitsPerSecond, burst);
+            return this;
+        }
+
+        public Builder setLimit(API.Endpoint endpoint, double permitsPerSecond, int burst) {
+            this.limits.put(endpoint, new Limit(permitsPerSecond, burst));
+            return this;
+        }
+
+        public Builder setBlocking(boolean blocking) {
+            this.blocking = blocking;
+            return this;
+        }
+
+        public RateLimitPolicy build() {
+            return new RateLimitPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket smoothing the calls made to an {@link API.Endpoint} of a project.
+ * The bucket holds up to {@code burst} permits and is refilled at {@code permitsPerSecond}. Permits can be reserved
+ * ahead of their refill, the caller then waits for the returned delay so that concurrent callers are queued fairly.
+ */
+public class RateLimiter {
+
+    protected static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    protected final double permitsPerSecond;
+
+    protected final int burst;
+
+    // negative when permits were reserved ahead of their refill
+    protected double permits;
+
+    protected long refilledAt;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate limit permits per second and burst must be positive");
+        }
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.permits = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit if one is available right away.
+     *
+     * @return {@code true} when the permit was taken, {@code false} otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (permits < 1) {
+            return false;
+        }
+
+        permits--;
+        return true;
+    }
+
+    /**
+     * Takes a permit, blocking until it is available.
+     *
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Reserves a permit without waiting for it.
+     *
+     * @return delay in nanoseconds before the reserved permit can be used
+     */
+    public synchronized long reserve() {
+        refill();
+        permits--;
+        return permits >= 0 ? 0 : (long) Math.ceil(-permits / permitsPerSecond * NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return number of permits available right away, negative when permits are reserved ahead
+     */
+    public synchronized double getAvailablePermits() {
+        refill();
+        return permits;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    protected void refill() {
+        long now = System.nanoTime();
+        permits = Math.min(burst, permits + (now - refilledAt) * permitsPerSecond / NANOS_PER_SECOND);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the retries of an {@link InsightClient} to a ratio of its calls.
+ * Each call deposits {@link RetryPolicy#getBudgetRatio()} of a retry, each retry withdraws a full one; the budget
+ * starts full and never holds more than {@link RetryPolicy#getBudgetCapacity()} retries. When Insight Cloud is
+ * struggling retries stop as soon as the budget is spent instead of multiplying the load.
+ * The same accounting bounds the hedged calls of a {@link Hedger}.
+ */
+public class RetryBudget {
+
+    protected static final long SCALE = 1000;
+
+    protected final long deposit;
+
+    protected final long capacity;
+
+    protected final AtomicLong balance;
+
+    public RetryBudget(RetryPolicy policy) {
+        this(policy.getBudgetRatio(), policy.getBudgetCapacity());
+    }
+
+    /**
+     * @param ratio    retries earned by each call
+     * @param capacity maximal number of retries saved up
+     */
+    public RetryBudget(double ratio, int capacity) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = capacity * SCALE;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Credits the budget for a call made.
+     */
+    public void deposit() {
+        balance.accumulateAndGet(deposit, (current, amount) -> Math.min(capacity, current + amount));
+    }
+
+    /**
+     * @return {@code true} when a retry was withdrawn from the budget, {@code false} when it is exhausted
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * @return number of retries currently available
+     */
+    public double getAvailable() {
+        return (double) balance.get() / SCALE;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+
+import okhttp3.Response;
+
+/**
+ * Retry policy of calls to Insight Cloud.
+ * <p>
+ * Idempotent calls (see {@link API.Endpoint#isIdempotent(API.HttpMethod)}) are retried on I/O failures and on
+ * 429, 502, 503 and 504 responses. Other calls are only retried when the request surely was not processed: the
+ * connection could not be established, or the server answered 429 or 503.
+ * <p>
+ * Delays grow exponentially with jitter, a {@code Retry-After} header sent with 429 or 503 takes precedence; when it
+ * asks to wait longer than the maximal backoff the call is not retried. Retries are also bounded by a
+ * {@link RetryBudget} shared by all calls of an {@link InsightClient}.
+ */
+public class RetryPolicy {
+
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    /**
+     * Policy making a single attempt per call
+     */
+    public static final RetryPolicy NONE = new Builder().setMaxAttempts(1).build();
+
+    private final int maxAttempts;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    private final double budgetRatio;
+
+    private final int budgetCapacity;
+
+    protected RetryPolicy(Builder builder) {
+        if (builder.maxAttempts < 1 || builder.budgetRatio < 0 || builder.budgetCapacity < 0) {
+            throw new IllegalArgumentException("Retry attempts and budget must be positive");
+        }
+
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetCapacity = builder.budgetCapacity;
+    }
+
+    /**
+     * @return maximal number of attempts of a call, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * @return retries earned by each call made
+     */
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    /**
+     * @return maximal number of retries that can be saved up in the budget
+     */
+    public int getBudgetCapacity() {
+        return budgetCapacity;
+    }
+
+    /**
+     * Decides whether the call has to be retried after the given attempt.
+     *
+     * @param call     {@link InsightCall} attempted
+     * @param attempt  number of attempts made so far, starting at 1
+     * @param response {@link Response} of the attempt, {@code null} when it failed
+     * @param failure  {@link IOException} of the attempt, {@code null} when a response was received
+     * @return delay in milliseconds before the next attempt, -1 when the call must not be retried
+     */
+    public long retryDelay(InsightCall<?> call, int attempt, @Nullable Response response,
+            @Nullable IOException failure) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+
+        if (response == null) {
+            return call.isIdempotent() || failure instanceof ConnectException ? backoff(attempt) : -1;
+        }
+
+        switch (response.code()) {
+        case 429:
+        case 503:
+            long retryAfter = retryAfter(response);
+            if (retryAfter > maxBackoff.toMillis()) {
+                return -1;
+            }
+            return retryAfter >= 0 ? retryAfter : backoff(attempt);
+        case 502:
+        case 504:
+            return call.isIdempotent() ? backoff(attempt) : -1;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * @return exponential backoff with jitter, between half and all of {@code initialBackoff * 2^(attempt - 1)}
+     * capped by {@code maxBackoff}
+     */
+    protected long backoff(int attempt) {
+        long exponential = initialBackoff.toMillis() << Math.min(attempt - 1, 30);
+        long cap = Math.min(maxBackoff.toMillis(), exponential < 0 ? Long.MAX_VALUE : exponential);
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * @return delay in milliseconds requested by {@code Retry-After}, -1 when absent or malformed
+     */
+    protected long retryAfter(Response response) {
+        String value = response.header(RETRY_AFTER_HEADER);
+        if (StringUtils.isBlank(value)) {
+            return -1;
+        }
+
+        if (StringUtils.isNumeric(value.trim())) {
+            return Duration.ofSeconds(Long.parseLong(value.trim())).toMillis();
+        }
+
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(), date).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public static class Builder {
+
+        private int maxAttempts = 3;
+
+        private Duration initialBackoff = Duration.ofMillis(200);
+
+        private Duration maxBackoff = Duration.ofSeconds(10);
+
+        private double budgetRatio = 0.2;
+
+        private int budgetCapacity = 20;
+
+        public Builder setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Builder setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public Builder setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public Builder setBudgetCapacity(int budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
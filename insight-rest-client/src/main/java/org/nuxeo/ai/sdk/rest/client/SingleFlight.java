@@ -0,0 +1,190 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.client;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.nuxeo.ai.sdk.rest.ResponseHandler;
+
+/**
+ * Coalesces concurrent identical idempotent calls of an {@link InsightClient}, see
+ * {@link InsightConfiguration#isCoalescing()}.
+ * <p>
+ * Calls are identical when they share the method, path, headers, JSON body and class of response handler. The first
+ * call leads the flight and reaches Insight Cloud, calls made while it is in flight wait for it and get the same
+ * result, including its failure. Each caller gets its own future: the shared call is only cancelled once all of them
+ * are. Results are not copied, coalesced callers must treat them as read-only. Stateful calls such as the scroll
+ * requests of {@link API.Dedup#ALL} are not idempotent and never coalesced.
+ */
+public class SingleFlight {
+
+    protected final Map<Key, Flight<?>> flights = new ConcurrentHashMap<>();
+
+    protected final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param call    {@link InsightCall} to make
+     * @param starter starting the call, only invoked when no identical call is in flight
+     * @return {@link CompletableFuture} of the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(InsightCall<T> call, Supplier<CompletableFuture<T>> starter) {
+        Key key = new Key(call);
+        Flight<?>[] created = new Flight<?>[1];
+        Flight<T> flight = (Flight<T>) flights.compute(key, (k, current) -> {
+            if (current != null && current.join()) {
+                return current;
+            }
+            created[0] = new Flight<T>();
+            return created[0];
+        });
+
+        if (flight != created[0]) {
+            coalesced.increment();
+            return flight.follow();
+        }
+
+        CompletableFuture<T> follower = flight.follow();
+        flight.shared.whenComplete((result, failure) -> flights.remove(key, flight));
+        CompletableFuture<T> started;
+        try {
+            started = starter.get();
+        } catch (RuntimeException e) {
+            flight.shared.completeExceptionally(e);
+            return follower;
+        }
+        flight.shared.whenComplete((result, failure) -> {
+            if (flight.shared.isCancelled()) {
+                started.cancel(true);
+            }
+        });
+        started.whenComplete((result, failure) -> {
+            if (failure != null) {
+                flight.shared.completeExceptionally(failure);
+            } else {
+                flight.shared.complete(result);
+            }
+        });
+        return follower;
+    }
+
+    /**
+     * @return number of calls that joined an identical call in flight instead of reaching Insight Cloud
+     */
+    public long getCoalescedCalls() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of distinct calls in flight
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    protected static class Flight<T> {
+
+        protected final CompletableFuture<T> shared = new CompletableFuture<>();
+
+        // the leader follows its own flight
+        protected int followers = 1;
+
+        /**
+         * @return {@code true} when the flight was joined, {@code false} when it is already done
+         */
+        protected synchronized boolean join() {
+            if (shared.isDone()) {
+                return false;
+            }
+            followers++;
+            return true;
+        }
+
+        protected CompletableFuture<T> follow() {
+            CompletableFuture<T> follower = new CompletableFuture<>();
+            follower.whenComplete((result, failure) -> {
+                if (follower.isCancelled()) {
+                    leave();
+                }
+            });
+            shared.whenComplete((result, failure) -> {
+                if (failure != null) {
+                    follower.completeExceptionally(failure);
+                } else {
+                    follower.complete(result);
+                }
+            });
+            return follower;
+        }
+
+        protected synchronized void leave() {
+            if (--followers == 0) {
+                shared.cancel(true);
+            }
+        }
+    }
+
+    protected static class Key {
+
+        protected final API.HttpMethod method;
+
+        protected final String path;
+
+        protected final Map<String, ?> headers;
+
+        protected final String json;
+
+        protected final Class<?> handlerClass;
+
+        protected final int hash;
+
+        protected Key(InsightCall<?> call) {
+            this.method = call.getMethod();
+            this.path = call.getPath();
+            this.headers = call.getHeaders();
+            this.json = call.getJson();
+            ResponseHandler<?> handler = call.getHandler();
+            this.handlerClass = handler != null ? handler.getClass() : null;
+            this.hash = Objects.hash(method, path, headers, json, handlerClass);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && method == key.method && path.equals(key.path) && headers.equals(key.headers)
+                    && Objects.equals(json, key.json) && handlerClass == key.handlerClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
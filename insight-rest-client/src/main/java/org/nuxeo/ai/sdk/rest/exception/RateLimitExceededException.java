@@ -0,0 +1,39 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.exception;
+
+import org.nuxeo.ai.sdk.rest.client.API;
+
+/**
+ * Thrown when a call is rejected without reaching Insight Cloud because the rate limit of its endpoint is reached
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private final API.Endpoint endpoint;
+
+    public RateLimitExceededException(String projectId, API.Endpoint endpoint) {
+        super("Rate limit exceeded for project " + projectId + " and endpoint " + endpoint.getQualifiedName());
+        this.endpoint = endpoint;
+    }
+
+    public API.Endpoint getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.exception;
+
+/**
+ * Thrown when Insight Cloud answers a call with an unexpected status or without a usable body
+ */
+public class UnexpectedResponseException extends RuntimeException {
+
+    private final int status;
+
+    public UnexpectedResponseException(String message) {
+        this(message, -1);
+    }
+
+    public UnexpectedResponseException(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * @return HTTP status of the response, -1 when no response was received
+     */
+    public int getStatus() {
+        return status;
+    }
+}
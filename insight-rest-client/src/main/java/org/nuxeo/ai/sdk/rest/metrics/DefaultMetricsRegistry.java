@@ -0,0 +1,145 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ai.sdk.rest.client.API;
+
+/**
+ * In memory {@link MetricsRegistry} keeping {@link EndpointMetrics} per endpoint, raw calls are gathered under
+ * {@link #RAW_CALLS}. Metrics can be exposed as MXBeans with {@link #registerMBeans(String)}.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+
+    private static final Logger log = LogManager.getLogger(DefaultMetricsRegistry.class);
+
+    public static final String RAW_CALLS = "raw";
+
+    public static final String JMX_DOMAIN = "org.nuxeo.ai.sdk.rest";
+
+    protected final Map<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+
+    protected String jmxName;
+
+    @Override
+    public void callStarted(API.Endpoint endpoint, long requestBytes) {
+        getMetrics(endpoint).onStarted(requestBytes);
+    }
+
+    @Override
+    public void callCompleted(API.Endpoint endpoint, int statusCode, long latencyNanos) {
+        getMetrics(endpoint).onCompleted(statusCode, latencyNanos);
+    }
+
+    @Override
+    public void callFailed(API.Endpoint endpoint, Exception failure, long latencyNanos) {
+        getMetrics(endpoint).onFailed(failure, latencyNanos);
+    }
+
+    @Override
+    public void callEnded(API.Endpoint endpoint, long responseBytes) {
+        getMetrics(endpoint).onEnded(responseBytes);
+    }
+
+    /**
+     * @param endpoint {@link API.Endpoint} called, {@code null} for raw calls
+     * @return {@link EndpointMetrics} of the endpoint, created on first use
+     */
+    @Nonnull
+    public EndpointMetrics getMetrics(@Nullable API.Endpoint endpoint) {
+        String name = endpoint != null ? endpoint.getQualifiedName() : RAW_CALLS;
+        EndpointMetrics endpointMetrics = metrics.get(name);
+        if (endpointMetrics == null) {
+            EndpointMetrics created = new EndpointMetrics(name);
+            endpointMetrics = metrics.putIfAbsent(name, created);
+            if (endpointMetrics == null) {
+                endpointMetrics = created;
+                register(created);
+            }
+        }
+        return endpointMetrics;
+    }
+
+    /**
+     * @return {@link EndpointMetrics} of the endpoints called so far, by qualified name
+     */
+    @Nonnull
+    public Map<String, EndpointMetrics> getAllMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Exposes the metrics of every endpoint, current and future, in the platform MBean server under
+     * {@code org.nuxeo.ai.sdk.rest:type=InsightMetrics,name=<name>,endpoint=<endpoint>}.
+     *
+     * @param name distinguishing this registry from the others of the JVM, such as the project id
+     */
+    public synchronized void registerMBeans(String name) {
+        unregisterMBeans();
+        jmxName = name;
+        metrics.values().forEach(this::register);
+    }
+
+    public synchronized void unregisterMBeans() {
+        if (jmxName == null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (EndpointMetrics endpointMetrics : metrics.values()) {
+            try {
+                ObjectName objectName = getObjectName(endpointMetrics);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                log.warn("Could not unregister metrics of {}", endpointMetrics.getName(), e);
+            }
+        }
+        jmxName = null;
+    }
+
+    protected synchronized void register(EndpointMetrics endpointMetrics) {
+        if (jmxName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(endpointMetrics, getObjectName(endpointMetrics));
+        } catch (JMException e) {
+            log.warn("Could not register metrics of {}", endpointMetrics.getName(), e);
+        }
+    }
+
+    protected ObjectName getObjectName(EndpointMetrics endpointMetrics) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=InsightMetrics,name=" + ObjectName.quote(jmxName) + ",endpoint="
+                + endpointMetrics.getName());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.metrics;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the calls made to one endpoint, recorded with low contention counters.
+ */
+public class EndpointMetrics implements EndpointMetricsMXBean {
+
+    protected final String name;
+
+    protected final LatencyHistogram latency = new LatencyHistogram();
+
+    protected final LongAdder calls = new LongAdder();
+
+    protected final LongAdder inFlight = new LongAdder();
+
+    protected final LongAdder failures = new LongAdder();
+
+    protected final LongAdder timeouts = new LongAdder();
+
+    protected final LongAdder requestBytes = new LongAdder();
+
+    protected final LongAdder responseBytes = new LongAdder();
+
+    protected final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+    public EndpointMetrics(String name) {
+        this.name = name;
+    }
+
+    public void onStarted(long bytes) {
+        calls.increment();
+        inFlight.increment();
+        requestBytes.add(Math.max(0, bytes));
+    }
+
+    public void onCompleted(int statusCode, long latencyNanos) {
+        latency.record(latencyNanos);
+        statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+    }
+
+    public void onFailed(Exception failure, long latencyNanos) {
+        latency.record(latencyNanos);
+        failures.increment();
+        if (failure instanceof InterruptedIOException) {
+            timeouts.increment();
+        }
+        inFlight.decrement();
+    }
+
+    public void onEnded(long bytes) {
+        responseBytes.add(bytes);
+        inFlight.decrement();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    @Override
+    public Map<Integer, Long> getStatusCodes() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCodes.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public double getLatencyP50() {
+        return toMillis(latency.getPercentile(0.5));
+    }
+
+    @Override
+    public double getLatencyP95() {
+        return toMillis(latency.getPercentile(0.95));
+    }
+
+    @Override
+    public double getLatencyP99() {
+        return toMillis(latency.getPercentile(0.99));
+    }
+
+    @Override
+    public double getLatencyMax() {
+        return toMillis(latency.getMax());
+    }
+
+    protected static double toMillis(long micros) {
+        return micros / 1000d;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link EndpointMetrics} of an endpoint, latencies are in milliseconds.
+ */
+public interface EndpointMetricsMXBean {
+
+    String getName();
+
+    long getCalls();
+
+    long getInFlight();
+
+    long getFailures();
+
+    long getTimeouts();
+
+    long getRequestBytes();
+
+    long getResponseBytes();
+
+    Map<Integer, Long> getStatusCodes();
+
+    double getLatencyP50();
+
+    double getLatencyP95();
+
+    double getLatencyP99();
+
+    double getLatencyMax();
+}
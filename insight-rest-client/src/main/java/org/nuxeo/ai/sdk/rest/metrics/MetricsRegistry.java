@@ -0,0 +1,78 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest.metrics;
+
+import javax.annotation.Nullable;
+import org.nuxeo.ai.sdk.rest.client.API;
+
+/**
+ * Receives the measures of every HTTP exchange made with Insight Cloud.
+ * Implementations bridge them to a metrics library, {@link DefaultMetricsRegistry} keeps them in memory and exposes
+ * them over JMX. Methods are called from the threads doing I/O and must not block.
+ * <p>
+ * An exchange starts with {@link #callStarted}, then either fails with {@link #callFailed} or receives a response
+ * with {@link #callCompleted} and ends with {@link #callEnded} once the response body is closed.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Registry ignoring every measure
+     */
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        @Override
+        public void callStarted(API.Endpoint endpoint, long requestBytes) {
+        }
+
+        @Override
+        public void callCompleted(API.Endpoint endpoint, int statusCode, long latencyNanos) {
+        }
+
+        @Override
+        public void callFailed(API.Endpoint endpoint, Exception failure, long latencyNanos) {
+        }
+
+        @Override
+        public void callEnded(API.Endpoint endpoint, long responseBytes) {
+        }
+    };
+
+    /**
+     * @param endpoint     {@link API.Endpoint} called, {@code null} for raw calls
+     * @param requestBytes size of the request body sent on the wire
+     */
+    void callStarted(@Nullable API.Endpoint endpoint, long requestBytes);
+
+    /**
+     * @param statusCode   HTTP status of the response
+     * @param latencyNanos time until the response headers were received
+     */
+    void callCompleted(@Nullable API.Endpoint endpoint, int statusCode, long latencyNanos);
+
+    /**
+     * @param failure      cause of the failure, an {@link java.io.InterruptedIOException} on timeouts
+     * @param latencyNanos time until the failure
+     */
+    void callFailed(@Nullable API.Endpoint endpoint, Exception failure, long latencyNanos);
+
+    /**
+     * @param responseBytes size of the response body read from the wire
+     */
+    void callEnded(@Nullable API.Endpoint endpoint, long responseBytes);
+}
@@ -0,0 +1,92 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.CircuitBreaker;
+import org.nuxeo.ai.sdk.rest.client.CircuitBreakerPolicy;
+
+public class TestCircuitBreaker {
+
+    private final CircuitBreakerPolicy policy = new CircuitBreakerPolicy.Builder().setSlidingWindowSize(4)
+                                                                                  .setMinimumCalls(4)
+                                                                                  .setFailureRateThreshold(0.5f)
+                                                                                  .setSlowCallDuration(
+                                                                                          Duration.ofSeconds(1))
+                                                                                  .setWaitInOpenState(
+                                                                                          Duration.ofMillis(50))
+                                                                                  .setPermittedCallsInHalfOpenState(2)
+                                                                                  .build();
+
+    @Test
+    public void shouldOpenOnFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker(API.Model.PREDICT, policy);
+        record(breaker, false, false, true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        record(breaker, true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void shouldOpenOnSlowCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(API.Model.PREDICT, policy);
+        for (int i = 0; i < 4; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onResult(false, Duration.ofSeconds(2).toNanos());
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldProbeInHalfOpenState() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(API.Dedup.FIND, policy);
+        record(breaker, true, true, true, true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        Thread.sleep(60);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        breaker.release();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onResult(false, 0);
+        breaker.onResult(true, 0);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        Thread.sleep(60);
+        record(breaker, false, false);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private static void record(CircuitBreaker breaker, boolean... outcomes) {
+        for (boolean failed : outcomes) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onResult(failed, 0);
+        }
+    }
+}
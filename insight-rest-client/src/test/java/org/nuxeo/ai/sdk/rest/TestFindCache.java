@@ -0,0 +1,137 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import org.nuxeo.ai.sdk.rest.client.Authentication;
+import org.nuxeo.ai.sdk.rest.client.FindCache;
+import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.InsightConfiguration;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class TestFindCache {
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedAndExpire() throws InterruptedException {
+        FindCache cache = new FindCache(2, Duration.ofHours(1));
+        FindCache.Key first = FindCache.key("test", "doc1", "file:content", 0);
+        FindCache.Key second = FindCache.key("test", "doc2", "file:content", 0);
+        FindCache.Key third = FindCache.key("test", "doc1", "file:content", 1);
+        cache.put(first, asList("doc2", "doc3"), cache.getGeneration());
+        cache.put(second, singletonList("doc1"), cache.getGeneration());
+        List<String> found = cache.get(first);
+        assertThat(found).containsExactly("doc2", "doc3");
+        found.clear();
+
+        cache.put(third, singletonList("doc4"), cache.getGeneration());
+        assertThat(cache.get(second)).isNull();
+        assertThat(cache.get(first)).containsExactly("doc2", "doc3");
+        assertThat(cache.getEvictions()).isEqualTo(1);
+
+        cache = new FindCache(2, Duration.ofMillis(20));
+        cache.put(first, singletonList("doc2"), cache.getGeneration());
+        Thread.sleep(30);
+        assertThat(cache.get(first)).isNull();
+        assertThat(cache.getEntries()).isZero();
+    }
+
+    @Test
+    public void shouldKeyLookupsByContent() throws JsonProcessingException {
+        TensorInstances original = new TensorInstances("original",
+                singletonList(singletonMap("dc:title", TensorInstances.Tensor.text("a title"))));
+        TensorInstances copy = new TensorInstances("copy",
+                singletonList(singletonMap("dc:title", TensorInstances.Tensor.text("a title"))));
+
+        assertThat(FindCache.key("test", null, 0, original)).isEqualTo(FindCache.key("test", null, 0, copy))
+                                                           .isNotEqualTo(FindCache.key("test", "dc:title", 0, copy))
+                                                           .isNotEqualTo(FindCache.key("test", null, 1, copy));
+    }
+
+    @Test
+    public void shouldInvalidateAffectedLookups() throws JsonProcessingException {
+        FindCache cache = new FindCache(10, Duration.ofHours(1));
+        FindCache.Key content = FindCache.key("test", "doc1", "file:content", 0);
+        FindCache.Key title = FindCache.key("test", "doc1", "dc:title", 0);
+        FindCache.Key listing = FindCache.key("test", "doc2", "file:content", 0);
+        FindCache.Key other = FindCache.key("test", "doc3", "file:content", 0);
+        FindCache.Key byTensor = FindCache.key("test", null, 0, new TensorInstances("doc4",
+                singletonList(singletonMap("dc:title", TensorInstances.Tensor.text("a title")))));
+        FindCache.Key project = FindCache.key("project", "doc1", "file:content", 0);
+        for (FindCache.Key key : asList(content, title, listing, other, byTensor, project)) {
+            cache.put(key, singletonList(key == listing ? "doc1" : "doc5"), cache.getGeneration());
+        }
+
+        cache.invalidateDeleted("test", "doc1", "file:content");
+        assertThat(cache.get(content)).isNull();
+        assertThat(cache.get(listing)).isNull();
+        assertThat(cache.get(title)).isNotNull();
+        assertThat(cache.get(other)).isNotNull();
+        assertThat(cache.get(byTensor)).isNotNull();
+
+        cache.invalidateXpath("test", "dc:title");
+        assertThat(cache.get(title)).isNull();
+        assertThat(cache.get(byTensor)).isNull();
+        assertThat(cache.get(other)).isNotNull();
+
+        cache.invalidateProject("test");
+        assertThat(cache.get(other)).isNull();
+        assertThat(cache.get(project)).isNotNull();
+        assertThat(cache.getInvalidations()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldNotStoreLookupIssuedBeforeInvalidation() {
+        FindCache cache = new FindCache(10, Duration.ofHours(1));
+        FindCache.Key key = FindCache.key("test", "doc1", "file:content", 0);
+        long generation = cache.getGeneration();
+        cache.invalidateXpath("test", "file:content");
+        cache.put(key, singletonList("doc2"), generation);
+        assertThat(cache.get(key)).isNull();
+
+        cache.put(key, singletonList("doc2"), cache.getGeneration());
+        assertThat(cache.get(key)).containsExactly("doc2");
+    }
+
+    @Test
+    public void shouldBeDisabledByDefault() {
+        InsightConfiguration defaults = configuration().build();
+        assertThat(defaults.getFindCacheSize()).isZero();
+        assertThat(new InsightClient(defaults).getFindCache()).isNull();
+
+        InsightClient client = new InsightClient(configuration().setFindCacheSize(100).build());
+        assertThat(client.getFindCache()).isNotNull();
+        assertThat(client.getFindCache().getMaxEntries()).isEqualTo(100);
+    }
+
+    protected static InsightConfiguration.Builder configuration() {
+        return new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                                 .setProjectId("test")
+                                                 .setAuthentication(
+                                                         new Authentication("Administrator", "Administrator"));
+    }
+}
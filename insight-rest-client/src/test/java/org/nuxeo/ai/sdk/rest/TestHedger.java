@@ -0,0 +1,139 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.Authentication;
+import org.nuxeo.ai.sdk.rest.client.Hedger;
+import org.nuxeo.ai.sdk.rest.client.HedgingPolicy;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
+import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.InsightConfiguration;
+
+import okhttp3.Response;
+
+public class TestHedger {
+
+    private static final ResponseHandler<Boolean> HANDLER = Response::isSuccessful;
+
+    private static final InsightCall<Boolean> CALL = InsightCall.post(API.Model.PREDICT, "path", "{}", HANDLER);
+
+    @Test
+    public void shouldHedgeSlowCallAndCancelLoser() throws InterruptedException {
+        Hedger hedger = new Hedger(new HedgingPolicy.Builder().setDelay(Duration.ofMillis(10)).build());
+        List<CompletableFuture<Boolean>> attempts = new CopyOnWriteArrayList<>();
+        CountDownLatch launched = new CountDownLatch(2);
+        CompletableFuture<Boolean> result = hedger.hedge(CALL, () -> {
+            CompletableFuture<Boolean> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            launched.countDown();
+            return attempt;
+        });
+
+        assertThat(launched.await(5, TimeUnit.SECONDS)).isTrue();
+        attempts.get(1).complete(true);
+        assertThat(result.join()).isTrue();
+        assertThat(attempts.get(0)).isCancelled();
+        assertThat(hedger.getHedges()).isEqualTo(1);
+        assertThat(hedger.getWins()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWaitForOtherAttemptWhenOneFails() throws InterruptedException {
+        Hedger hedger = new Hedger(new HedgingPolicy.Builder().setDelay(Duration.ofMillis(10)).build());
+        List<CompletableFuture<Boolean>> attempts = new CopyOnWriteArrayList<>();
+        CountDownLatch launched = new CountDownLatch(2);
+        CompletableFuture<Boolean> result = hedger.hedge(CALL, () -> {
+            CompletableFuture<Boolean> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            launched.countDown();
+            return attempt;
+        });
+
+        assertThat(launched.await(5, TimeUnit.SECONDS)).isTrue();
+        attempts.get(1).complete(null);
+        assertThat(result).isNotDone();
+        attempts.get(0).complete(true);
+        assertThat(result.join()).isTrue();
+        assertThat(hedger.getWins()).isZero();
+    }
+
+    @Test
+    public void shouldCapHedgeRate() throws InterruptedException {
+        Hedger hedger = new Hedger(new HedgingPolicy.Builder().setDelay(Duration.ofMillis(200))
+                                                              .setMaxHedgeRatio(0.1)
+                                                              .setBudgetCapacity(2)
+                                                              .build());
+        List<CompletableFuture<Boolean>> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(hedger.hedge(CALL, CompletableFuture::new));
+        }
+        Thread.sleep(500);
+        // the budget starts full, deposits beyond its capacity are lost
+        assertThat(hedger.getHedges()).isEqualTo(2);
+
+        for (int i = 0; i < 10; i++) {
+            results.add(hedger.hedge(CALL, CompletableFuture::new));
+        }
+        Thread.sleep(500);
+        assertThat(hedger.getHedges()).isEqualTo(3);
+        results.forEach(result -> result.cancel(true));
+    }
+
+    @Test
+    public void shouldOnlyHedgeIdempotentCallsOfHedgedEndpoints() {
+        Hedger hedger = new Hedger(new HedgingPolicy.Builder().setEndpoints(API.Model.PREDICT).build());
+        assertThat(hedger.isHedged(CALL)).isTrue();
+        assertThat(hedger.isHedged(InsightCall.post(API.Dedup.FIND, "path", "{}", HANDLER))).isFalse();
+        assertThat(hedger.isHedged(InsightCall.post(API.Dedup.INDEX, "path", "{}", HANDLER))).isFalse();
+        assertThat(hedger.isHedged(InsightCall.put(API.Model.PREDICT, "path", "{}", HANDLER))).isTrue();
+    }
+
+    @Test
+    public void shouldNotHedgeByDefault() {
+        InsightConfiguration defaults = configuration().build();
+        assertThat(defaults.getHedgingPolicy().isEnabled()).isFalse();
+        assertThat(new InsightClient(defaults).getHedger()).isNull();
+
+        HedgingPolicy policy = new HedgingPolicy.Builder().setDelay(Duration.ofMillis(10)).build();
+        assertThat(new InsightClient(configuration().setHedgingPolicy(policy).build()).getHedger()).isNotNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidPolicy() {
+        new HedgingPolicy.Builder().setPercentile(1.5).build();
+    }
+
+    protected static InsightConfiguration.Builder configuration() {
+        return new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                                 .setProjectId("test")
+                                                 .setAuthentication(
+                                                         new Authentication("Administrator", "Administrator"));
+    }
+}
@@ -21,6 +21,7 @@ package org.nuxeo.ai.sdk.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.Duration;
 import org.junit.Test;
 import org.nuxeo.ai.sdk.rest.client.Authentication;
 import org.nuxeo.ai.sdk.rest.client.InsightClient;
@@ -38,4 +39,43 @@ public class TestInsightClient {
         InsightClient client = new InsightClient(config);
         assertThat(client).isNotNull();
     }
+
+    @Test
+    public void shouldConfigurePoolAndDispatcher() {
+        Authentication auth = new Authentication("Administrator", "Administrator");
+        InsightConfiguration defaults = new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                                                          .setProjectId("test")
+                                                                          .setAuthentication(auth)
+                                                                          .build();
+        assertThat(defaults.getMaxIdleConnections()).isEqualTo(32);
+        assertThat(defaults.getKeepAliveDuration()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(defaults.getMaxRequests()).isEqualTo(256);
+        assertThat(defaults.getMaxRequestsPerHost()).isEqualTo(64);
+        assertThat(defaults.getWarmUpConnections()).isEqualTo(4);
+
+        InsightConfiguration config = new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                                                        .setProjectId("test")
+                                                                        .setAuthentication(auth)
+                                                                        .setMaxIdleConnections(8)
+                                                                        .setKeepAliveDuration(Duration.ofSeconds(30))
+                                                                        .setMaxRequests(100)
+                                                                        .setMaxRequestsPerHost(100)
+                                                                        .setWarmUpConnections(16)
+                                                                        .build();
+        assertThat(config.getMaxIdleConnections()).isEqualTo(8);
+        assertThat(config.getKeepAliveDuration()).isEqualTo(Duration.ofSeconds(30));
+        assertThat(config.getMaxRequests()).isEqualTo(100);
+        assertThat(config.getMaxRequestsPerHost()).isEqualTo(100);
+        assertThat(config.getWarmUpConnections()).isEqualTo(8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidDispatcherLimits() {
+        Authentication auth = new Authentication("Administrator", "Administrator");
+        new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                          .setProjectId("test")
+                                          .setAuthentication(auth)
+                                          .setMaxRequests(0)
+                                          .build();
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.metrics.LatencyHistogram;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void shouldComputePercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentile(0.99)).isZero();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000);
+        assertThat((double) histogram.getPercentile(0.5)).isCloseTo(500_000, within(500_000 / 8d));
+        assertThat((double) histogram.getPercentile(0.95)).isCloseTo(950_000, within(950_000 / 8d));
+        assertThat((double) histogram.getPercentile(0.99)).isCloseTo(990_000, within(990_000 / 8d));
+        assertThat(histogram.getPercentile(1)).isEqualTo(histogram.getMax());
+    }
+
+    @Test
+    public void shouldKeepSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(5));
+        assertThat(histogram.getPercentile(0.5)).isEqualTo(3);
+        assertThat(histogram.getPercentile(1)).isEqualTo(5);
+    }
+}
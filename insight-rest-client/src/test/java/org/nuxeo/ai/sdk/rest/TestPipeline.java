@@ -0,0 +1,134 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.client.BatchDispatcher;
+import org.nuxeo.ai.sdk.rest.client.BatchResult;
+import org.nuxeo.ai.sdk.rest.client.Pipeline;
+
+public class TestPipeline {
+
+    @Test
+    public void shouldBoundCallsInFlight() {
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        Pipeline<Integer, Integer> pipeline = new Pipeline<>(item -> {
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            synchronized (calls) {
+                calls.add(call);
+            }
+            return call;
+        }, 3);
+        AtomicInteger failures = new AtomicInteger();
+
+        CompletableFuture<Pipeline.Summary> summary = pipeline.run(IntStream.range(0, 10).iterator(),
+                (item, result) -> failures.addAndGet(result.isSuccess() ? 0 : 1));
+        for (int completed = 0; completed < 10; completed++) {
+            synchronized (calls) {
+                assertThat(calls.size() - completed).isLessThanOrEqualTo(3);
+            }
+            calls.get(completed).complete(completed == 4 ? null : completed);
+        }
+
+        assertThat(summary.join().getItems()).isEqualTo(10);
+        assertThat(summary.join().getFailed()).isEqualTo(1);
+        assertThat(failures).hasValue(1);
+    }
+
+    @Test
+    public void shouldDispatchChunksInInputOrder() {
+        List<CompletableFuture<List<Integer>>> calls = new ArrayList<>();
+        List<List<Integer>> chunks = new ArrayList<>();
+        BatchDispatcher<Integer, Integer> dispatcher = new BatchDispatcher<>(chunk -> {
+            CompletableFuture<List<Integer>> call = new CompletableFuture<>();
+            synchronized (calls) {
+                calls.add(call);
+                chunks.add(chunk);
+            }
+            return call;
+        }, 3, 2);
+
+        CompletableFuture<List<BatchResult<Integer>>> results = dispatcher.dispatch(
+                IntStream.range(0, 10).boxed().collect(Collectors.toList()));
+        for (int completed = 0; completed < 4; completed++) {
+            synchronized (calls) {
+                assertThat(calls.size() - completed).isLessThanOrEqualTo(2);
+            }
+            List<Integer> chunk = chunks.get(completed);
+            calls.get(completed).complete(completed == 1 ? chunk.subList(1, 3) : chunk);
+        }
+
+        assertThat(chunks).extracting(List::size).containsExactly(3, 3, 3, 1);
+        assertThat(results.join()).extracting(BatchResult::isSuccess)
+                                  .containsExactly(true, true, true, false, false, false, true, true, true, true);
+        assertThat(results.join().get(9).getValue()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldStopDispatchingWhenCancelled() {
+        List<CompletableFuture<List<Integer>>> calls = new ArrayList<>();
+        BatchDispatcher<Integer, Integer> dispatcher = new BatchDispatcher<>(chunk -> {
+            CompletableFuture<List<Integer>> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        }, 2, 1);
+
+        CompletableFuture<List<BatchResult<Integer>>> results = dispatcher.dispatch(Arrays.asList(1, 2, 3, 4, 5));
+        results.cancel(false);
+        calls.get(0).complete(Arrays.asList(1, 2));
+        assertThat(calls).hasSize(1);
+    }
+
+    @Test
+    public void shouldFailWhenSourceFails() {
+        Iterator<Integer> source = new Iterator<Integer>() {
+
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                if (next == 5) {
+                    throw new IllegalStateException("source is broken");
+                }
+                return next++;
+            }
+        };
+        Pipeline<Integer, Integer> pipeline = new Pipeline<>(CompletableFuture::completedFuture, 2);
+        assertThatThrownBy(() -> pipeline.run(source, (item, result) -> {}).join()).isInstanceOf(
+                CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+    }
+}
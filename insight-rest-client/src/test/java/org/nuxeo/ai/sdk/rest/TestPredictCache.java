@@ -0,0 +1,109 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Collections;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.objects.TensorInstances;
+import org.nuxeo.ai.sdk.rest.client.Authentication;
+import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.InsightConfiguration;
+import org.nuxeo.ai.sdk.rest.client.PredictCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class TestPredictCache {
+
+    @Test
+    public void shouldAddressPredictionsByContent() throws JsonProcessingException {
+        TensorInstances original = new TensorInstances("original",
+                singletonList(singletonMap("dc:title", TensorInstances.Tensor.text("a title"))));
+        TensorInstances copy = new TensorInstances("copy",
+                singletonList(singletonMap("dc:title", TensorInstances.Tensor.text("a title"))));
+        TensorInstances other = new TensorInstances("original",
+                singletonList(singletonMap("dc:title", TensorInstances.Tensor.text("another title"))));
+
+        assertThat(PredictCache.key("model", "dev", original)).isEqualTo(PredictCache.key("model", "dev", copy));
+        assertThat(PredictCache.key("model", "dev", original)).isNotEqualTo(PredictCache.key("model", "dev", other))
+                                                             .isNotEqualTo(PredictCache.key("other", "dev", original));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedBeyondMaxBytes() {
+        PredictCache cache = new PredictCache(10, Duration.ofHours(1));
+        PredictCache.Key first = new PredictCache.Key("model", "dev", "1");
+        PredictCache.Key second = new PredictCache.Key("model", "dev", "2");
+        PredictCache.Key third = new PredictCache.Key("model", "dev", "3");
+        cache.put(first, new byte[4]);
+        cache.put(second, new byte[4]);
+        assertThat(cache.get(first)).isNotNull();
+
+        cache.put(third, new byte[4]);
+        assertThat(cache.get(second)).isNull();
+        assertThat(cache.get(first)).isNotNull();
+        assertThat(cache.get(third)).isNotNull();
+        assertThat(cache.getBytes()).isEqualTo(8);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getHitRate()).isEqualTo(0.75);
+
+        cache.put(second, new byte[11]);
+        assertThat(cache.getEntries()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldExpireAndInvalidateEntries() throws InterruptedException {
+        PredictCache cache = new PredictCache(100, Duration.ofMillis(20));
+        PredictCache.Key key = new PredictCache.Key("model", "dev", "1");
+        cache.put(key, new byte[4]);
+        Thread.sleep(30);
+        assertThat(cache.get(key)).isNull();
+        assertThat(cache.getBytes()).isZero();
+
+        cache = new PredictCache(100, Duration.ofHours(1));
+        cache.put(key, new byte[4]);
+        cache.put(new PredictCache.Key("other", "dev", "1"), new byte[4]);
+        cache.invalidateModels(Collections.singleton("model"));
+        assertThat(cache.get(key)).isNull();
+        assertThat(cache.getEntries()).isEqualTo(1);
+        assertThat(cache.getBytes()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldBeDisabledByDefault() {
+        InsightConfiguration defaults = configuration().build();
+        assertThat(defaults.getPredictCacheMaxBytes()).isZero();
+        assertThat(new InsightClient(defaults).getPredictCache()).isNull();
+
+        InsightClient client = new InsightClient(configuration().setPredictCacheMaxBytes(1 << 20).build());
+        assertThat(client.getPredictCache()).isNotNull();
+        assertThat(client.getPredictCache().getMaxBytes()).isEqualTo(1 << 20);
+    }
+
+    protected static InsightConfiguration.Builder configuration() {
+        return new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                                 .setProjectId("test")
+                                                 .setAuthentication(
+                                                         new Authentication("Administrator", "Administrator"));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.RateLimitPolicy;
+import org.nuxeo.ai.sdk.rest.client.RateLimiter;
+
+public class TestRateLimiter {
+
+    @Test
+    public void shouldAllowBurstThenRefill() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(50, 3);
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+
+        Thread.sleep(30);
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void shouldQueueReservations() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(20, 1);
+        assertThat(limiter.reserve()).isZero();
+        assertThat(limiter.reserve()).isBetween(TimeUnit.MILLISECONDS.toNanos(40), TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(limiter.reserve()).isBetween(TimeUnit.MILLISECONDS.toNanos(90), TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(limiter.tryAcquire()).isFalse();
+
+        long start = System.nanoTime();
+        limiter.acquire();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(140));
+    }
+
+    @Test
+    public void shouldScopeLimitersToProjectAndEndpoint() {
+        RateLimitPolicy policy = new RateLimitPolicy.Builder().setLimit(API.Dedup.INDEX, 10, 5).build();
+        RateLimiter limiter = policy.getRateLimiter("project", API.Dedup.INDEX);
+        assertThat(limiter).isNotNull().isSameAs(policy.getRateLimiter("project", API.Dedup.INDEX));
+        assertThat(limiter.getBurst()).isEqualTo(5);
+        assertThat(policy.getRateLimiter("other", API.Dedup.INDEX)).isNotNull().isNotSameAs(limiter);
+        assertThat(policy.getRateLimiter("project", API.Dedup.FIND)).isNull();
+        assertThat(RateLimitPolicy.UNLIMITED.getRateLimiter("project", API.Model.PREDICT)).isNull();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
+import org.nuxeo.ai.sdk.rest.client.RetryBudget;
+import org.nuxeo.ai.sdk.rest.client.RetryPolicy;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+public class TestRetryPolicy {
+
+    private final RetryPolicy policy = new RetryPolicy.Builder().setMaxAttempts(3)
+                                                                .setInitialBackoff(Duration.ofMillis(100))
+                                                                .setMaxBackoff(Duration.ofSeconds(10))
+                                                                .build();
+
+    private final InsightCall<Boolean> index = InsightCall.post(API.Dedup.INDEX, "ai/dedup/test/index/doc/xpath", "{}",
+            null);
+
+    private final InsightCall<Boolean> find = InsightCall.post(API.Dedup.FIND, "ai/dedup/test/find", "{}", null);
+
+    @Test
+    public void shouldRetryIdempotentCalls() {
+        assertThat(find.isIdempotent()).isTrue();
+        assertThat(policy.retryDelay(find, 1, response(502, null), null)).isBetween(50L, 100L);
+        assertThat(policy.retryDelay(find, 2, response(504, null), null)).isBetween(100L, 200L);
+        assertThat(policy.retryDelay(find, 1, null, new SocketTimeoutException())).isNotNegative();
+        assertThat(policy.retryDelay(find, 3, response(502, null), null)).isEqualTo(-1);
+        assertThat(policy.retryDelay(find, 1, response(500, null), null)).isEqualTo(-1);
+        assertThat(policy.retryDelay(find, 1, response(404, null), null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldRetryNonIdempotentCallsOnlyWhenNotProcessed() {
+        assertThat(index.isIdempotent()).isFalse();
+        assertThat(policy.retryDelay(index, 1, response(502, null), null)).isEqualTo(-1);
+        assertThat(policy.retryDelay(index, 1, null, new SocketTimeoutException())).isEqualTo(-1);
+        assertThat(policy.retryDelay(index, 1, null, new ConnectException())).isNotNegative();
+        assertThat(policy.retryDelay(index, 1, response(429, null), null)).isNotNegative();
+        assertThat(policy.retryDelay(index, 1, response(503, null), null)).isNotNegative();
+    }
+
+    @Test
+    public void shouldNotRepeatScrollRequests() {
+        InsightCall<Boolean> scroll = InsightCall.get(API.Dedup.ALL, "ai/dedup/test/similars", null);
+        assertThat(scroll.isIdempotent()).isFalse();
+        assertThat(policy.retryDelay(scroll, 1, null, new SocketTimeoutException())).isEqualTo(-1);
+        assertThat(policy.retryDelay(scroll, 1, response(502, null), null)).isEqualTo(-1);
+        assertThat(InsightCall.get(API.Dedup.FIND, "ai/dedup/test/find/doc/xpath", null).isIdempotent()).isTrue();
+    }
+
+    @Test
+    public void shouldHonorRetryAfter() {
+        assertThat(policy.retryDelay(index, 1, response(429, "2"), null)).isEqualTo(2000);
+        assertThat(policy.retryDelay(find, 1, response(503, "0"), null)).isEqualTo(0);
+        assertThat(policy.retryDelay(find, 1, response(503, "60"), null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldBoundRetriesWithBudget() {
+        RetryPolicy policy = new RetryPolicy.Builder().setBudgetCapacity(2).setBudgetRatio(0.5).build();
+        RetryBudget budget = new RetryBudget(policy);
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+
+        budget.deposit();
+        assertThat(budget.tryAcquire()).isFalse();
+        budget.deposit();
+        assertThat(budget.tryAcquire()).isTrue();
+
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertThat(budget.getAvailable()).isEqualTo(2.0);
+    }
+
+    private Response response(int code, String retryAfter) {
+        Request request = new Request.Builder().url("http://localhost/").build();
+        Response.Builder builder = new Response.Builder().request(request)
+                                                         .protocol(Protocol.HTTP_1_1)
+                                                         .code(code)
+                                                         .message("");
+        if (retryAfter != null) {
+            builder.header(RetryPolicy.RETRY_AFTER_HEADER, retryAfter);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.Authentication;
+import org.nuxeo.ai.sdk.rest.client.InsightCall;
+import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.InsightConfiguration;
+import org.nuxeo.ai.sdk.rest.client.SingleFlight;
+
+import okhttp3.Response;
+
+public class TestSingleFlight {
+
+    private static final ResponseHandler<Boolean> HANDLER = Response::isSuccessful;
+
+    @Test
+    public void shouldShareIdenticalCallsInFlight() {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<Boolean> request = new CompletableFuture<>();
+        InsightCall<Boolean> call = InsightCall.post(API.Dedup.FIND, "path", "{\"docId\":\"1\"}", HANDLER);
+
+        CompletableFuture<Boolean> first = singleFlight.execute(call, () -> {
+            started.incrementAndGet();
+            return request;
+        });
+        CompletableFuture<Boolean> second = singleFlight.execute(
+                InsightCall.post(API.Dedup.FIND, "path", "{\"docId\":\"1\"}", HANDLER), () -> {
+                    started.incrementAndGet();
+                    return new CompletableFuture<>();
+                });
+        CompletableFuture<Boolean> other = singleFlight.execute(
+                InsightCall.post(API.Dedup.FIND, "path", "{\"docId\":\"2\"}", HANDLER), () -> {
+                    started.incrementAndGet();
+                    return CompletableFuture.completedFuture(false);
+                });
+
+        assertThat(started).hasValue(2);
+        assertThat(other.join()).isFalse();
+        assertThat(singleFlight.getInFlight()).isEqualTo(1);
+        request.complete(true);
+        assertThat(first.join()).isTrue();
+        assertThat(second.join()).isTrue();
+        assertThat(singleFlight.getCoalescedCalls()).isEqualTo(1);
+        assertThat(singleFlight.getInFlight()).isZero();
+
+        singleFlight.execute(call, () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(true);
+        });
+        assertThat(started).hasValue(3);
+    }
+
+    @Test
+    public void shouldCancelSharedCallWithItsLastFollower() {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<Boolean> request = new CompletableFuture<>();
+        InsightCall<Boolean> call = InsightCall.get(API.Dedup.ALL, "path", HANDLER);
+        CompletableFuture<Boolean> first = singleFlight.execute(call, () -> request);
+        CompletableFuture<Boolean> second = singleFlight.execute(call, CompletableFuture::new);
+
+        first.cancel(true);
+        assertThat(request).isNotDone();
+        second.cancel(true);
+        assertThat(request).isCancelled();
+        assertThat(singleFlight.getInFlight()).isZero();
+    }
+
+    @Test
+    public void shouldNotCoalesceByDefault() {
+        InsightConfiguration defaults = configuration().build();
+        assertThat(defaults.isCoalescing()).isFalse();
+        assertThat(new InsightClient(defaults).getSingleFlight()).isNull();
+        assertThat(new InsightClient(configuration().setCoalescing(true).build()).getSingleFlight()).isNotNull();
+    }
+
+    protected static InsightConfiguration.Builder configuration() {
+        return new InsightConfiguration.Builder().setUrl("localhost:8080")
+                                                 .setProjectId("test")
+                                                 .setAuthentication(
+                                                         new Authentication("Administrator", "Administrator"));
+    }
+}
@@ -36,12 +36,18 @@ public class AbstractCallerTest {
             options().extensions(new ResponseTemplateTransformer(true)).port(5089));
 
     protected InsightClient getInsightClient() {
+        return getInsightClient(getConfigurationBuilder());
+    }
+
+    protected InsightConfiguration.Builder getConfigurationBuilder() {
         Authentication auth = new Authentication("Administrator", "Administrator");
-        InsightConfiguration config = new InsightConfiguration.Builder().setProjectId("test")
-                                                                        .setAuthentication(auth)
-                                                                        .setUrl("http://localhost:5089")
-                                                                        .build();
-        InsightClient client = new InsightClient(config);
+        return new InsightConfiguration.Builder().setProjectId("test")
+                                                 .setAuthentication(auth)
+                                                 .setUrl("http://localhost:5089");
+    }
+
+    protected InsightClient getInsightClient(InsightConfiguration.Builder builder) {
+        InsightClient client = new InsightClient(builder.build());
         client.connect();
         return client;
     }
@@ -19,9 +19,20 @@
  */
 package org.nuxeo.ai.sdk.rest.api;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.fail;
 import static org.nuxeo.ai.sdk.rest.Common.DEFAULT_XPATH;
 import static org.nuxeo.ai.sdk.rest.Common.Headers.SCROLL_ID_HEADER;
@@ -31,16 +42,32 @@ import static org.nuxeo.ai.sdk.rest.Common.XPATH_PARAM;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 import org.nuxeo.ai.sdk.objects.TensorInstances;
 import org.nuxeo.ai.sdk.objects.deduplication.ScrollableResult;
+import org.nuxeo.ai.sdk.objects.deduplication.SimilarTuple;
 import org.nuxeo.ai.sdk.rest.client.API.Dedup;
+import org.nuxeo.ai.sdk.rest.client.BatchResult;
 import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.Pipeline;
+import org.nuxeo.ai.sdk.rest.client.RateLimitPolicy;
+import org.nuxeo.ai.sdk.rest.exception.InvalidEndpointException;
 import org.nuxeo.ai.sdk.rest.exception.InvalidParametersException;
+import org.nuxeo.ai.sdk.rest.exception.RateLimitExceededException;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 
 public class TestDedupCaller extends AbstractCallerTest {
 
@@ -152,7 +179,228 @@ public class TestDedupCaller extends AbstractCallerTest {
         assertThat(result).isTrue();
     }
 
+    @Test
+    public void shouldIndexInBulk() {
+        String url = "/api/v1/ai/dedup/test/index/bulk_.*";
+        wireMockRule.stubFor(post(urlMatching(url)).willReturn(aResponse().withStatus(200)));
+        String failing = "/api/v1/ai/dedup/test/index/bulk_7/file:content";
+        wireMockRule.stubFor(post(urlEqualTo(failing)).atPriority(1).willReturn(aResponse().withStatus(500)));
+
+        InsightClient client = getInsightClient();
+        DedupCaller caller = (DedupCaller) client.api(Dedup.INDEX);
+        Map<String, BatchResult<Boolean>> results = new ConcurrentHashMap<>();
+        Stream<DedupCaller.IndexItem> items = IntStream.range(0, 20).mapToObj(
+                i -> new DedupCaller.IndexItem("bulk_" + i, DEFAULT_XPATH, createTensor("bulk_" + i)));
+
+        Pipeline.Summary summary = caller.index(items, 4, (item, result) -> results.put(item.getDocId(), result))
+                                         .join();
+        assertThat(summary.getItems()).isEqualTo(20);
+        assertThat(summary.getSucceeded()).isEqualTo(19);
+        assertThat(summary.getFailed()).isEqualTo(1);
+        assertThat(summary.getThroughput()).isPositive();
+        assertThat(summary.getLatency().getCount()).isEqualTo(20);
+        assertThat(results).hasSize(20);
+        assertThat(results.get("bulk_7").getFailure()).isInstanceOf(UnexpectedResponseException.class);
+        assertThat(((UnexpectedResponseException) results.get("bulk_7").getFailure()).getStatus()).isEqualTo(500);
+        wireMockRule.verify(20, postRequestedFor(urlMatching(url)));
+
+        assertThatThrownBy(() -> ((DedupCaller) client.api(Dedup.FIND)).index(Collections.emptyIterator(), 1,
+                (item, result) -> {})).isInstanceOf(InvalidEndpointException.class);
+    }
+
+    @Test
+    public void shouldScrollEverySimilarTuple() {
+        String url = "/api/v1/ai/dedup/test/similars";
+        wireMockRule.stubFor(get(urlEqualTo(url)).atPriority(1)
+                                                 .withHeader(SCROLL_ID_HEADER, absent())
+                                                 .willReturn(page("s1", "doc1", "doc2")));
+        wireMockRule.stubFor(get(urlEqualTo(url)).atPriority(1)
+                                                 .withHeader(SCROLL_ID_HEADER, equalTo("s1"))
+                                                 .willReturn(page("s2", "doc3")));
+        wireMockRule.stubFor(get(urlEqualTo(url)).atPriority(1)
+                                                 .withHeader(SCROLL_ID_HEADER, equalTo("s2"))
+                                                 .willReturn(page("s3")));
+
+        InsightClient client = getInsightClient();
+        ScrollIterator tuples = ((DedupCaller) client.api(Dedup.ALL)).scroll();
+        List<String> documents = new ArrayList<>();
+        tuples.forEachRemaining(tuple -> documents.add(tuple.getDocumentId()));
+        assertThat(documents).containsExactly("doc1", "doc2", "doc3");
+        assertThat(tuples.getPages()).isEqualTo(3);
+        assertThat(tuples.hasNext()).isFalse();
+        wireMockRule.verify(3, getRequestedFor(urlEqualTo(url)));
+
+        try (Stream<SimilarTuple> stream = ((DedupCaller) client.api(Dedup.ALL)).tuples()) {
+            assertThat(stream.limit(1)).extracting(SimilarTuple::getDocumentId).containsExactly("doc1");
+        }
+    }
+
+    private ResponseDefinitionBuilder page(String scrollId, String... documentIds) {
+        String tuples = Arrays.stream(documentIds)
+                              .map(id -> "{\"documentId\": \"" + id + "\", \"xpath\": \"file:content\", "
+                                      + "\"similarDocuments\": [{\"other\": \"file:content\"}]}")
+                              .collect(Collectors.joining(","));
+        return aResponse().withStatus(200)
+                          .withHeader("Content-Type", "application/json")
+                          .withBody("{\"scrollId\": \"" + scrollId + "\", \"result\": [" + tuples + "]}");
+    }
+
     private TensorInstances createTensor(String docId) {
         return new TensorInstances(docId, Collections.emptyList());
     }
+
+    @Test
+    public void shouldFindAsync() throws IOException {
+        InsightClient client = getInsightClient();
+        HashMap<String, Serializable> params = new HashMap<>();
+        params.put(UID, "document_uuid_001");
+        params.put(XPATH_PARAM, DEFAULT_XPATH);
+
+        CompletableFuture<List<String>> byDocId = client.api(Dedup.FIND).callAsync(params);
+        CompletableFuture<Boolean> drop = client.api(Dedup.DROP).callAsync();
+        assertThat(byDocId.join()).containsExactly("doc_001", "doc_002");
+        assertThat(drop.join()).isTrue();
+    }
+
+    @Test
+    public void shouldScopeScrollIdToItsRequest() throws IOException {
+        InsightClient client = getInsightClient();
+        ScrollableResult next = client.api(Dedup.ALL)
+                                      .call(singletonMap(SCROLL_ID_HEADER, "DXF1ZXJ5QW5kRmV0Y2gB...=="));
+        assertThat(next.getResult().get(0).getSimilarDocuments()).containsExactlyInAnyOrder(
+                Pair.of("doc121", "file:content"), Pair.of("doc123", "file:content"));
+
+        ScrollableResult first = client.api(Dedup.ALL).call(emptyMap());
+        assertThat(first).isNotNull();
+        assertThat(first.getResult().get(0).getSimilarDocuments()).hasSize(7);
+    }
+
+    @Test
+    public void shouldRetryIndexWhenThrottled() throws IOException {
+        String url = "/api/v1/ai/dedup/test/index/document_uuid_001/file:content";
+        wireMockRule.stubFor(post(urlEqualTo(url))
+                .inScenario("throttled")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(429).withHeader("Retry-After", "0"))
+                .willSetStateTo("available"));
+
+        InsightClient client = getInsightClient();
+        HashMap<String, Serializable> params = new HashMap<>();
+        params.put(UID, "document_uuid_001");
+        params.put(XPATH_PARAM, DEFAULT_XPATH);
+
+        Boolean result = client.api(Dedup.INDEX).call(params, createTensor("document_uuid_001"));
+        assertThat(result).isTrue();
+        wireMockRule.verify(2, postRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void shouldRetryFindAsyncOnGatewayError() throws IOException {
+        wireMockRule.stubFor(get(urlEqualTo("/api/v1/ai/dedup/test/find/document_uuid_001/file:content?distance=0"))
+                .inScenario("gateway")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(502))
+                .willSetStateTo("recovered"));
+
+        InsightClient client = getInsightClient();
+        HashMap<String, Serializable> params = new HashMap<>();
+        params.put(UID, "document_uuid_001");
+        params.put(XPATH_PARAM, DEFAULT_XPATH);
+
+        CompletableFuture<List<String>> result = client.api(Dedup.FIND).callAsync(params);
+        assertThat(result.join()).containsExactly("doc_001", "doc_002");
+    }
+
+    @Test
+    public void shouldSmoothIndexCalls() throws IOException {
+        RateLimitPolicy policy = new RateLimitPolicy.Builder().setLimit(Dedup.INDEX, 20, 1).build();
+        InsightClient client = getInsightClient(getConfigurationBuilder().setRateLimitPolicy(policy));
+        HashMap<String, Serializable> params = new HashMap<>();
+        params.put(UID, "document_uuid_001");
+        params.put(XPATH_PARAM, DEFAULT_XPATH);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            Boolean result = client.api(Dedup.INDEX).call(params, createTensor("document_uuid_001"));
+            assertThat(result).isTrue();
+        }
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(90_000_000L);
+
+        CompletableFuture<Boolean> future = client.api(Dedup.INDEX)
+                                                  .callAsync(params, createTensor("document_uuid_001"));
+        assertThat(future.join()).isTrue();
+    }
+
+    @Test
+    public void shouldRejectIndexOverRateLimit() throws IOException {
+        RateLimitPolicy policy = new RateLimitPolicy.Builder().setLimit(Dedup.INDEX, 0.1, 1)
+                                                              .setBlocking(false)
+                                                              .build();
+        InsightClient client = getInsightClient(getConfigurationBuilder().setRateLimitPolicy(policy));
+        HashMap<String, Serializable> params = new HashMap<>();
+        params.put(UID, "document_uuid_001");
+        params.put(XPATH_PARAM, DEFAULT_XPATH);
+
+        Boolean result = client.api(Dedup.INDEX).call(params, createTensor("document_uuid_001"));
+        assertThat(result).isTrue();
+        assertThatThrownBy(() -> client.api(Dedup.INDEX).call(params, createTensor("document_uuid_001")))
+                .isInstanceOf(RateLimitExceededException.class);
+        List<String> found = client.api(Dedup.FIND).call(params);
+        assertThat(found).isNotNull();
+    }
+
+    @Test
+    public void shouldServeFindFromCacheUntilIndexChanges() throws IOException {
+        String findUrl = "/api/v1/ai/dedup/test/find/document_uuid_001/file:content?distance=0";
+        InsightClient client = getInsightClient(getConfigurationBuilder().setFindCacheSize(100));
+        HashMap<String, Serializable> params = new HashMap<>();
+        params.put(UID, "document_uuid_001");
+        params.put(XPATH_PARAM, DEFAULT_XPATH);
+
+        List<String> first = client.api(Dedup.FIND).call(params);
+        CompletableFuture<List<String>> second = client.api(Dedup.FIND).callAsync(params);
+        assertThat(second.join()).isEqualTo(first).containsExactly("doc_001", "doc_002");
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo(findUrl)));
+
+        HashMap<String, Serializable> byTensor = new HashMap<>();
+        client.api(Dedup.FIND).call(byTensor, createTensor("document_uuid_002"));
+        List<String> sameContent = client.api(Dedup.FIND).call(byTensor, createTensor("document_uuid_003"));
+        assertThat(sameContent).containsExactly("doc_001", "doc_003", "doc_004");
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/v1/ai/dedup/test/find?distance=0")));
+
+        Boolean indexed = client.api(Dedup.INDEX).call(params, createTensor("document_uuid_001"));
+        assertThat(indexed).isTrue();
+        assertThat(client.getFindCache().getEntries()).isZero();
+        client.api(Dedup.FIND).call(params);
+        client.api(Dedup.FIND).call(params);
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo(findUrl)));
+
+        Boolean deleted = client.api(Dedup.DELETE).call(params);
+        assertThat(deleted).isTrue();
+        client.api(Dedup.FIND).call(params);
+        wireMockRule.verify(3, getRequestedFor(urlEqualTo(findUrl)));
+
+        Boolean dropped = client.api(Dedup.DROP).call();
+        assertThat(dropped).isTrue();
+        client.api(Dedup.FIND).call(params);
+        wireMockRule.verify(4, getRequestedFor(urlEqualTo(findUrl)));
+        assertThat(client.getFindCache().getHits()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNeverCoalesceScrollRequests() throws IOException {
+        String url = "/api/v1/ai/dedup/test/similars";
+        wireMockRule.stubFor(get(urlEqualTo(url)).atPriority(1)
+                                                 .willReturn(aResponse().withStatus(200)
+                                                                        .withHeader("Content-Type", "application/json")
+                                                                        .withBody("{\"result\": []}")
+                                                                        .withFixedDelay(200)));
+
+        InsightClient client = getInsightClient(getConfigurationBuilder().setCoalescing(true));
+        CompletableFuture<ScrollableResult> first = client.api(Dedup.ALL).callAsync(emptyMap());
+        CompletableFuture<ScrollableResult> second = client.api(Dedup.ALL).callAsync(emptyMap());
+        assertThat(first.join()).isNotSameAs(second.join());
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo(url)));
+        assertThat(client.getSingleFlight().getCoalescedCalls()).isZero();
+    }
 }
@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.junit.Rule;
 import org.junit.Test;
 import org.nuxeo.ai.sdk.objects.AICorpus;
@@ -79,4 +80,13 @@ public class TestExportCaller extends AbstractCallerTest {
         Boolean done = client.api(API.Export.DONE).call(params);
         assertThat(done).isNotNull().isTrue();
     }
+
+    @Test
+    public void shouldCallDoneExportAPIAsync() throws IOException {
+        InsightClient client = getInsightClient();
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(EXPORT_ID_PARAM, "e67ee0e8-1bef-4fb7-9966-1d1408ce67a0");
+        CompletableFuture<Boolean> done = client.api(API.Export.DONE).callAsync(params);
+        assertThat(done.join()).isNotNull().isTrue();
+    }
 }
@@ -20,33 +20,93 @@
 
 package org.nuxeo.ai.sdk.rest.api;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.nuxeo.ai.sdk.rest.Common.CHUNK_SIZE_PARAM;
 import static org.nuxeo.ai.sdk.rest.Common.MODEL_ID_PARAM;
 import static org.nuxeo.ai.sdk.rest.Common.MODEL_NAME_PARAM;
+import static org.nuxeo.ai.sdk.rest.Common.PARALLELISM_PARAM;
+import static org.nuxeo.ai.sdk.rest.Common.RAW_JSON_PARAM;
 import static org.nuxeo.ai.sdk.rest.api.ModelCaller.DATASOURCE_PARAM;
 import static org.nuxeo.ai.sdk.rest.api.ModelCaller.LABEL_PARAM;
+import static org.nuxeo.ai.sdk.rest.client.InsightConfiguration.Compression.GZIP;
+import static org.nuxeo.ai.sdk.rest.client.ModelCache.ETAG_HEADER;
+import static org.nuxeo.ai.sdk.rest.client.ModelCache.IF_NONE_MATCH_HEADER;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import javax.management.ObjectName;
 import org.junit.Rule;
 import org.junit.Test;
+import org.nuxeo.ai.sdk.objects.CorpusDelta;
+import org.nuxeo.ai.sdk.objects.InsightResponse;
+import org.nuxeo.ai.sdk.objects.ModelDescriptor;
+import org.nuxeo.ai.sdk.objects.PropertyType;
 import org.nuxeo.ai.sdk.objects.TensorInstances;
 import org.nuxeo.ai.sdk.rest.client.API;
+import org.nuxeo.ai.sdk.rest.client.BatchResult;
+import org.nuxeo.ai.sdk.rest.client.CircuitBreaker;
+import org.nuxeo.ai.sdk.rest.client.CircuitBreakerPolicy;
+import org.nuxeo.ai.sdk.rest.client.HedgingPolicy;
 import org.nuxeo.ai.sdk.rest.client.InsightClient;
+import org.nuxeo.ai.sdk.rest.client.InsightConfiguration;
+import org.nuxeo.ai.sdk.rest.client.ModelCache;
+import org.nuxeo.ai.sdk.rest.client.PredictCache;
+import org.nuxeo.ai.sdk.rest.client.RateLimitPolicy;
+import org.nuxeo.ai.sdk.rest.client.RetryBudget;
+import org.nuxeo.ai.sdk.rest.client.RetryPolicy;
+import org.nuxeo.ai.sdk.rest.exception.CircuitBreakerOpenException;
+import org.nuxeo.ai.sdk.rest.exception.UnexpectedResponseException;
+import org.nuxeo.ai.sdk.rest.metrics.DefaultMetricsRegistry;
+import org.nuxeo.ai.sdk.rest.metrics.EndpointMetrics;
 import org.nuxeo.client.objects.Documents;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 
 public class TestModelCaller extends AbstractCallerTest {
 
     @Test
     public void shouldGetALLModels() throws IOException {
         InsightClient client = getInsightClient();
-        String response = client.api(API.Model.ALL).call(Collections.emptyMap());
+        List<ModelDescriptor> response = client.api(API.Model.ALL).call(Collections.emptyMap());
+        assertThat(response).extracting(ModelDescriptor::getName).containsExactly("Components", "tags");
+        assertThat(response.get(0).getId()).isEqualTo("6b93bace-4ed3-408f-8efe-79a8dd287199");
+        assertThat(response.get(0).isPublished()).isTrue();
+        assertThat(response.get(0).getOutputs()).extracting(PropertyType::getName).containsExactly("tc:components");
+    }
+
+    @Test
+    public void shouldGetALLModelsAsString() throws IOException {
+        InsightClient client = getInsightClient();
+        String response = client.api(API.Model.ALL).call(Collections.singletonMap(RAW_JSON_PARAM, true));
         assertThat(response).isNotNull().isNotEqualTo("{}");
         Documents documents = client.getJSONFactory().readJSON(response, Documents.class);
         assertThat(documents).isNotNull();
@@ -55,22 +115,16 @@ public class TestModelCaller extends AbstractCallerTest {
     @Test
     public void shouldGetModelByDatasource() throws IOException {
         InsightClient client = getInsightClient();
-        String response = client.api(API.Model.BY_DATASOURCE).call(Collections.emptyMap());
-        assertThat(response).isNotNull().isNotEqualTo("{}");
-
-        Documents documents = client.getJSONFactory().readJSON(response, Documents.class);
-        assertThat(documents).isNotNull();
+        List<ModelDescriptor> response = client.api(API.Model.BY_DATASOURCE).call(Collections.emptyMap());
+        assertThat(response).isNotNull();
     }
 
     @Test
     public void shouldGetModelsByLabel() throws IOException {
         InsightClient client = getInsightClient();
         Map<String, Serializable> params = Collections.singletonMap(LABEL_PARAM, "dev");
-        String response = client.api(API.Model.PUBLISHED).call(params);
-        assertThat(response).isNotNull().isNotEqualTo("{}");
-
-        Documents documents = client.getJSONFactory().readJSON(response, Documents.class);
-        assertThat(documents).isNotNull();
+        List<ModelDescriptor> response = client.api(API.Model.PUBLISHED).call(params);
+        assertThat(response).isNotEmpty().allMatch(model -> model.getId() != null);
     }
 
     @Test
@@ -78,11 +132,18 @@ public class TestModelCaller extends AbstractCallerTest {
         InsightClient client = getInsightClient();
         Map<String, Serializable> params = Collections.singletonMap(MODEL_ID_PARAM,
                 "6b93bace-4ed3-408f-8efe-79a8dd287199");
-        String response = client.api(API.Model.DELTA).call(params);
-        assertThat(response).isNotNull().isNotEqualTo("{}");
+        try (CorpusDelta delta = client.api(API.Model.DELTA).call(params)) {
+            assertThat(delta).isNotNull();
+            assertThat(delta.getQuery()).isEqualTo("SELECT * FROM Document WHERE dc:title IS NOT NULL");
+            assertThat(delta.getInputs()).containsExactly(PropertyType.of("file:content", "img"));
 
-        Documents documents = client.getJSONFactory().readJSON(response, Documents.class);
-        assertThat(documents).isNotNull();
+            List<CorpusDelta.Output> outputs = delta.stream().collect(Collectors.toList());
+            assertThat(outputs).hasSize(1);
+            assertThat(outputs.get(0).getName()).isEqualTo("dc:title");
+            assertThat(outputs.get(0).getType()).isEqualTo("cat");
+            assertThat(outputs.get(0).getCategories()).hasSize(4);
+            assertThat(delta.getEnd()).isEqualTo(1571155442461L);
+        }
     }
 
     @Test
@@ -92,7 +153,564 @@ public class TestModelCaller extends AbstractCallerTest {
         params.put(MODEL_NAME_PARAM, "testModel");
         params.put(DATASOURCE_PARAM, "dev");
         TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        InsightResponse response = client.api(API.Model.PREDICT).call(params, instances);
+        assertThat(response).isNotNull();
+        assertThat(response.getLabels()).containsKeys("dc:nature", "dc:subjects");
+        assertThat(response.getLabels().get("dc:nature")).extracting(InsightResponse.Label::getName)
+                                                         .contains("report", "worksheet");
+    }
+
+    @Test
+    public void shouldKeepTopLabelsOfPredictions() throws IOException {
+        InsightClient client = getInsightClient(getConfigurationBuilder().setPredictTopK(2));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        InsightResponse response = client.api(API.Model.PREDICT).call(params, instances);
+        assertThat(response.getOutputs()).isNotEmpty()
+                                         .allSatisfy((output, labels) -> assertThat(labels.size()).isLessThan(3));
+        assertThat(response.getLabels().get("dc:nature")).extracting(InsightResponse.Label::getName)
+                                                         .containsExactlyInAnyOrder("report", "worksheet");
+    }
+
+    @Test
+    public void shouldRunPredictAsString() throws IOException {
+        InsightClient client = getInsightClient();
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        params.put(RAW_JSON_PARAM, true);
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
         String response = client.api(API.Model.PREDICT).call(params, instances);
         assertThat(response).isNotEmpty().isNotEqualTo("{}");
     }
+
+    @Test
+    public void shouldRunPredictAsync() throws IOException {
+        InsightClient client = getInsightClient();
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        CompletableFuture<InsightResponse> response = client.api(API.Model.PREDICT).callAsync(params, instances);
+        assertThat(response.join()).isNotNull();
+        assertThat(response.join().getLabels()).isNotEmpty();
+    }
+
+    @Test
+    public void shouldPredictBatchInInputOrder() throws IOException {
+        String url = "/api/v1/ai/test/model/batchModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).atPriority(1)
+                                                  .withRequestBody(containing("failing title"))
+                                                  .willReturn(aResponse().withStatus(500)));
+        wireMockRule.stubFor(post(urlEqualTo(url)).atPriority(2)
+                                                  .withRequestBody(containing("title 6"))
+                                                  .willReturn(results(0.6f)));
+        wireMockRule.stubFor(post(urlEqualTo(url)).atPriority(3).willReturn(results(0.1f, 0.2f)));
+
+        InsightClient client = getInsightClient();
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "batchModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        params.put(CHUNK_SIZE_PARAM, 2);
+        params.put(PARALLELISM_PARAM, 3);
+        ArrayList<TensorInstances> batch = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            batch.add(titled("doc " + i, i == 4 ? "failing title" : "title " + i));
+        }
+
+        List<BatchResult<InsightResponse>> results = client.api(API.Model.PREDICT).call(params, batch);
+        assertThat(results).hasSize(7).extracting(BatchResult::getIndex).containsExactly(0, 1, 2, 3, 4, 5, 6);
+        assertThat(results).extracting(BatchResult::isSuccess)
+                           .containsExactly(true, true, true, true, false, false, true);
+        assertThat(confidences(results.get(0).getValue())).containsExactly(0.1f);
+        assertThat(confidences(results.get(3).getValue())).containsExactly(0.2f);
+        assertThat(confidences(results.get(6).getValue())).containsExactly(0.6f);
+        assertThat(((UnexpectedResponseException) results.get(5).getFailure()).getStatus()).isEqualTo(500);
+        // one call per chunk of 2 items
+        wireMockRule.verify(4, postRequestedFor(urlEqualTo(url)));
+
+        CompletableFuture<List<BatchResult<InsightResponse>>> future = client.api(API.Model.PREDICT)
+                                                                             .callAsync(params, batch);
+        assertThat(future.join()).extracting(BatchResult::isSuccess)
+                                 .containsExactly(true, true, true, true, false, false, true);
+    }
+
+    @Test
+    public void shouldCacheEachPredictionOfBatch() throws IOException {
+        String url = "/api/v1/ai/test/model/batchModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(results(0.1f, 0.2f, 0.3f)));
+
+        InsightClient client = getInsightClient(getConfigurationBuilder().setPredictCacheMaxBytes(1 << 20));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "batchModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        ArrayList<TensorInstances> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(titled("doc " + i, "title " + i));
+        }
+
+        List<BatchResult<InsightResponse>> results = client.api(API.Model.PREDICT).call(params, batch);
+        assertThat(results).allMatch(BatchResult::isSuccess);
+        InsightResponse cached = client.api(API.Model.PREDICT).call(params, titled("a copy", "title 1"));
+        assertThat(cached.getLabels()).isEqualTo(results.get(1).getValue().getLabels());
+        assertThat(confidences(cached)).containsExactly(0.2f);
+
+        results = client.api(API.Model.PREDICT).call(params, batch);
+        assertThat(results).allMatch(BatchResult::isSuccess);
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo(url)));
+        assertThat(client.getPredictCache().getEntries()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotCacheMismatchingBatch() throws IOException {
+        String url = "/api/v1/ai/test/model/batchModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(results(0.1f, 0.2f, 0.3f)));
+
+        InsightClient client = getInsightClient(getConfigurationBuilder().setPredictCacheMaxBytes(1 << 20));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "batchModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        ArrayList<TensorInstances> batch = new ArrayList<>();
+        batch.add(titled("doc 0", "title 0"));
+        batch.add(titled("doc 1", "title 1"));
+
+        List<BatchResult<InsightResponse>> results = client.api(API.Model.PREDICT).call(params, batch);
+        assertThat(results).noneMatch(BatchResult::isSuccess);
+        assertThat(results.get(0).getFailure()).isInstanceOf(UnexpectedResponseException.class)
+                                               .hasMessage("Expected 2 results but got 3");
+        assertThat(client.getPredictCache().getEntries()).isZero();
+    }
+
+    protected static TensorInstances titled(String docId, String title) {
+        return new TensorInstances(docId,
+                Collections.singletonList(Collections.singletonMap("dc:title", TensorInstances.Tensor.text(title))));
+    }
+
+    protected static List<Float> confidences(InsightResponse response) {
+        return response.getLabels()
+                       .get("dc:title")
+                       .stream()
+                       .map(InsightResponse.Label::getConfidence)
+                       .collect(Collectors.toList());
+    }
+
+    /**
+     * @return response holding a result of a single label per confidence
+     */
+    protected static ResponseDefinitionBuilder results(float... confidences) {
+        StringBuilder body = new StringBuilder("{\"results\": [");
+        for (int i = 0; i < confidences.length; i++) {
+            body.append(i == 0 ? "" : ",")
+                .append("{\"output_names\": [\"dc:title\"], \"dc:title\": [")
+                .append(confidences[i])
+                .append("], \"dc:title_labels\": [\"t\"]}");
+        }
+        return aResponse().withStatus(200)
+                          .withHeader("Content-Type", "application/json")
+                          .withBody(body.append("]}").toString());
+    }
+
+    @Test
+    public void shouldNotGatherPredictionsByDefault() {
+        InsightConfiguration defaults = getConfigurationBuilder().build();
+        assertThat(defaults.getPredictBatchWindow()).isZero();
+        assertThat(defaults.getPredictBatchSize()).isEqualTo(32);
+        assertThat(new InsightClient(defaults).getPredictBatcher()).isNull();
+        InsightConfiguration invalid = getConfigurationBuilder().setPredictBatchWindow(Duration.ofSeconds(1))
+                                                                .setPredictBatchSize(0)
+                                                                .build();
+        assertThatThrownBy(() -> new InsightClient(invalid)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldNotCacheModelsByDefault() {
+        InsightConfiguration defaults = getConfigurationBuilder().build();
+        assertThat(defaults.getModelCacheTtl()).isZero();
+        assertThat(new InsightClient(defaults).getModelCache()).isNull();
+    }
+
+    @Test
+    public void shouldGatherPredictionsIntoBatches() throws IOException {
+        String url = "/api/v1/ai/test/model/batchModel/dev/predict?datasource=dev";
+        String result = "{\"output_names\": [\"dc:title\"], \"dc:title\": [%s], \"dc:title_labels\": [\"t\"]}";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(
+                aResponse().withStatus(200)
+                           .withHeader("Content-Type", "application/json")
+                           .withBody("{\"results\": [" + String.format(result, "0.1") + ","
+                                   + String.format(result, "0.2") + "," + String.format(result, "0.3") + "]}")));
+
+        InsightClient client = getInsightClient(
+                getConfigurationBuilder().setPredictBatchWindow(Duration.ofMinutes(1)).setPredictBatchSize(3));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "batchModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        Map<String, TensorInstances.Tensor> instance = Collections.singletonMap("dc:title",
+                TensorInstances.Tensor.text("a title"));
+
+        CompletableFuture<InsightResponse> first = client.api(API.Model.PREDICT)
+                                                         .callAsync(params, new TensorInstances("first",
+                                                                 Collections.singletonList(instance)));
+        assertThat(client.getPredictBatcher().getPending()).isEqualTo(1);
+        assertThat(first).isNotDone();
+        CompletableFuture<InsightResponse> second = client.api(API.Model.PREDICT)
+                                                          .callAsync(params, new TensorInstances("second",
+                                                                  Collections.singletonList(instance)));
+        CompletableFuture<InsightResponse> third = client.api(API.Model.PREDICT)
+                                                         .callAsync(params, new TensorInstances("third",
+                                                                 Collections.singletonList(instance)));
+
+        assertThat(first.join().getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("t", 0.1f));
+        assertThat(second.join().getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("t", 0.2f));
+        assertThat(third.join().getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("t", 0.3f));
+        assertThat(client.getPredictBatcher().getPending()).isZero();
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo(url)).withRequestBody(containing("\"docId\":null")));
+
+        // an incomplete batch is sent once flushed, a mismatching response fails its predictions
+        CompletableFuture<InsightResponse> alone = client.getPredictBatcher().predict("batchModel", "dev",
+                new TensorInstances("alone", Collections.singletonList(instance)));
+        client.getPredictBatcher().flush();
+        assertThatThrownBy(alone::join).hasCauseInstanceOf(UnexpectedResponseException.class);
+    }
+
+    @Test
+    public void shouldCacheBatchedPredictions() throws IOException {
+        String url = "/api/v1/ai/test/model/batchModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(results(0.1f, 0.2f)));
+
+        InsightClient client = getInsightClient(getConfigurationBuilder().setPredictCacheMaxBytes(1 << 20)
+                                                                         .setPredictBatchWindow(Duration.ofMinutes(1))
+                                                                         .setPredictBatchSize(2));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "batchModel");
+        params.put(DATASOURCE_PARAM, "dev");
+
+        CompletableFuture<InsightResponse> first = client.api(API.Model.PREDICT)
+                                                         .callAsync(params, titled("first", "title 1"));
+        CompletableFuture<InsightResponse> second = client.api(API.Model.PREDICT)
+                                                          .callAsync(params, titled("second", "title 2"));
+        assertThat(confidences(first.join())).containsExactly(0.1f);
+        assertThat(confidences(second.join())).containsExactly(0.2f);
+        assertThat(client.getPredictCache().getEntries()).isEqualTo(2);
+
+        InsightResponse cached = client.api(API.Model.PREDICT).call(params, titled("a copy", "title 2"));
+        assertThat(confidences(cached)).containsExactly(0.2f);
+        assertThat(client.getPredictBatcher().getPending()).isZero();
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void shouldHedgeSlowPrediction() throws IOException {
+        String url = "/api/v1/ai/test/model/hedgedModel/dev/predict?datasource=dev";
+        String body = "{\"results\": [{\"output_names\": [\"dc:title\"], \"dc:title\": [0.5], "
+                + "\"dc:title_labels\": [\"t\"]}]}";
+        wireMockRule.stubFor(post(urlEqualTo(url)).inScenario("hedging")
+                                                  .whenScenarioStateIs(Scenario.STARTED)
+                                                  .willSetStateTo("hedged")
+                                                  .willReturn(aResponse().withStatus(200)
+                                                                         .withHeader("Content-Type", "application/json")
+                                                                         .withBody(body)
+                                                                         .withFixedDelay(5000)));
+        wireMockRule.stubFor(post(urlEqualTo(url)).inScenario("hedging")
+                                                  .whenScenarioStateIs("hedged")
+                                                  .willReturn(aResponse().withStatus(200)
+                                                                         .withHeader("Content-Type", "application/json")
+                                                                         .withBody(body)));
+
+        HedgingPolicy policy = new HedgingPolicy.Builder().setDelay(Duration.ofMillis(100)).build();
+        RetryPolicy retryPolicy = new RetryPolicy.Builder().setBudgetRatio(0.5).setBudgetCapacity(10).build();
+        InsightClient client = getInsightClient(
+                getConfigurationBuilder().setHedgingPolicy(policy).setRetryPolicy(retryPolicy));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "hedgedModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        RetryBudget budget = client.getRetryBudget();
+        while (budget.tryAcquire()) {
+            // spends the budget so that deposits show
+        }
+
+        long start = System.nanoTime();
+        InsightResponse response = client.api(API.Model.PREDICT).call(params, new TensorInstances("doc", null));
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+        assertThat(response.getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("t", 0.5f));
+        assertThat(client.getHedger().getHedges()).isEqualTo(1);
+        assertThat(client.getHedger().getWins()).isEqualTo(1);
+        // the hedge does not earn retries
+        assertThat(budget.getAvailable()).isEqualTo(0.5);
+        wireMockRule.verify(2, postRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void shouldServeIdenticalContentFromPredictCache() throws IOException {
+        InsightClient client = getInsightClient(getConfigurationBuilder().setPredictCacheMaxBytes(1 << 20));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        List<Map<String, TensorInstances.Tensor>> content = Collections.singletonList(
+                Collections.singletonMap("dc:title", TensorInstances.Tensor.text("a title")));
+
+        InsightResponse response = client.api(API.Model.PREDICT).call(params, new TensorInstances("a doc", content));
+        InsightResponse copy = client.api(API.Model.PREDICT).call(params, new TensorInstances("a copy", content));
+        CompletableFuture<InsightResponse> async = client.api(API.Model.PREDICT)
+                                                         .callAsync(params, new TensorInstances("a version", content));
+        assertThat(copy).isNotSameAs(response);
+        assertThat(copy.getLabels()).isEqualTo(response.getLabels());
+        assertThat(async.join().getLabels()).isEqualTo(response.getLabels());
+        String url = "/api/v1/ai/test/model/testModel/dev/predict?datasource=dev";
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo(url)));
+
+        PredictCache cache = client.getPredictCache();
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getBytes()).isPositive();
+    }
+
+    @Test
+    public void shouldCoalesceIdenticalPredictions() throws IOException {
+        String url = "/api/v1/ai/test/model/slowModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(aResponse().withStatus(200)
+                                                                         .withHeader("Content-Type", "application/json")
+                                                                         .withBody("{\"results\":[]}")
+                                                                         .withFixedDelay(300)));
+
+        InsightClient client = getInsightClient(getConfigurationBuilder().setCoalescing(true));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "slowModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        List<CompletableFuture<InsightResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(client.api(API.Model.PREDICT).callAsync(params, instances));
+        }
+        futures.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.api(API.Model.PREDICT).call(params, instances);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }));
+
+        InsightResponse response = futures.get(0).join();
+        assertThat(futures).allSatisfy(future -> assertThat(future.join()).isSameAs(response));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo(url)));
+        assertThat(client.getSingleFlight().getCoalescedCalls()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNegotiateCompression() throws IOException {
+        InsightClient client = getInsightClient(getConfigurationBuilder().setCompression(GZIP));
+        List<ModelDescriptor> response = client.api(API.Model.ALL).call(Collections.emptyMap());
+        assertThat(response).isEqualTo(getInsightClient().api(API.Model.ALL).call(Collections.emptyMap()));
+        assertThat(client.getCompressionInterceptor().getResponseBytesSaved()).isPositive();
+
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        String text = StringUtils.repeat("a repeated sentence ", 500);
+        TensorInstances instances = new TensorInstances("a doc id",
+                Collections.singletonList(Collections.singletonMap("text", TensorInstances.Tensor.text(text))));
+        assertThat((InsightResponse) client.api(API.Model.PREDICT).call(params, instances)).isNotNull();
+        assertThat(client.getCompressionInterceptor().getRequestBytesSaved()).isGreaterThan(text.length() / 2);
+    }
+
+    @Test
+    public void shouldNotCompressIncompressibleBody() throws IOException {
+        InsightClient client = getInsightClient(getConfigurationBuilder().setCompression(GZIP)
+                                                                         .setCompressionThreshold(1));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        // a few bytes grow once gzipped
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        assertThat((InsightResponse) client.api(API.Model.PREDICT).call(params, instances)).isNotNull();
+        assertThat(client.getCompressionInterceptor().getRequestBytesSaved()).isZero();
+        wireMockRule.verify(postRequestedFor(urlEqualTo("/api/v1/ai/test/model/testModel/dev/predict?datasource=dev"))
+                .withoutHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void shouldOpenCircuitOnServerErrors() throws IOException {
+        String url = "/api/v1/ai/test/model/failingModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(aResponse().withStatus(500)));
+
+        CircuitBreakerPolicy policy = new CircuitBreakerPolicy.Builder().setSlidingWindowSize(2)
+                                                                        .setMinimumCalls(2)
+                                                                        .build();
+        InsightClient client = getInsightClient(
+                getConfigurationBuilder().setRetryPolicy(RetryPolicy.NONE).setCircuitBreakerPolicy(policy));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "failingModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+
+        client.api(API.Model.PREDICT).call(params, instances);
+        client.api(API.Model.PREDICT).call(params, instances);
+        assertThat(client.getCircuitBreaker(API.Model.PREDICT).getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> client.api(API.Model.PREDICT).call(params, instances)).isInstanceOf(
+                CircuitBreakerOpenException.class);
+        CompletableFuture<InsightResponse> future = client.api(API.Model.PREDICT).callAsync(params, instances);
+        assertThatThrownBy(future::join).isInstanceOf(CompletionException.class)
+                                        .hasCauseInstanceOf(CircuitBreakerOpenException.class);
+        wireMockRule.verify(2, postRequestedFor(urlEqualTo(url)));
+
+        List<ModelDescriptor> response = client.api(API.Model.ALL).call(Collections.emptyMap());
+        assertThat(response).isNotNull();
+        assertThat(client.getCircuitBreaker(API.Model.ALL).getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldNotSpendPermitsWhenCircuitIsOpen() throws IOException {
+        String url = "/api/v1/ai/test/model/failingModel/dev/predict?datasource=dev";
+        wireMockRule.stubFor(post(urlEqualTo(url)).willReturn(aResponse().withStatus(500)));
+
+        CircuitBreakerPolicy breakerPolicy = new CircuitBreakerPolicy.Builder().setSlidingWindowSize(2)
+                                                                               .setMinimumCalls(2)
+                                                                               .build();
+        RateLimitPolicy limitPolicy = new RateLimitPolicy.Builder().setLimit(API.Model.PREDICT, 0.01, 4)
+                                                                   .setBlocking(false)
+                                                                   .build();
+        InsightClient client = getInsightClient(getConfigurationBuilder().setRetryPolicy(RetryPolicy.NONE)
+                                                                         .setCircuitBreakerPolicy(breakerPolicy)
+                                                                         .setRateLimitPolicy(limitPolicy));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "failingModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+
+        client.api(API.Model.PREDICT).call(params, instances);
+        client.api(API.Model.PREDICT).call(params, instances);
+        assertThat(client.getCircuitBreaker(API.Model.PREDICT).getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> client.api(API.Model.PREDICT).call(params, instances)).isInstanceOf(
+                    CircuitBreakerOpenException.class);
+            CompletableFuture<InsightResponse> future = client.api(API.Model.PREDICT).callAsync(params, instances);
+            assertThatThrownBy(future::join).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+        }
+        assertThat(client.getRateLimiter(API.Model.PREDICT).getAvailablePermits()).isCloseTo(2, within(0.1));
+        wireMockRule.verify(2, postRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void shouldConnectOnceWhenWarmingUpConcurrently() throws Exception {
+        InsightClient client = new InsightClient(getConfigurationBuilder().setWarmUpConnections(2).build());
+        assertThat(client.isConnected()).isFalse();
+
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> warmUps = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                warmUps.add(executor.submit(() -> {
+                    start.await();
+                    return client.warmUp();
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> warmUp : warmUps) {
+                assertThat(warmUp.get()).isEqualTo(2);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // a single login to connect, then one handshake per warmed up connection
+        wireMockRule.verify(1 + threads * 2, postRequestedFor(urlPathEqualTo("/api/v1/automation/login")));
+
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        assertThat((InsightResponse) client.api(API.Model.PREDICT).call(params, instances)).isNotNull();
+    }
+
+    @Test
+    public void shouldRecordMetrics() throws Exception {
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+        InsightClient client = getInsightClient(getConfigurationBuilder().setMetricsRegistry(registry));
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        client.api(API.Model.PREDICT).call(params, instances);
+        client.api(API.Model.PREDICT).callAsync(params, instances).join();
+
+        EndpointMetrics metrics = registry.getMetrics(API.Model.PREDICT);
+        assertThat(metrics.getName()).isEqualTo("Model.PREDICT");
+        assertThat(metrics.getCalls()).isEqualTo(2);
+        assertThat(metrics.getInFlight()).isZero();
+        assertThat(metrics.getStatusCodes()).containsEntry(200, 2L);
+        assertThat(metrics.getRequestBytes()).isPositive();
+        assertThat(metrics.getResponseBytes()).isPositive();
+        assertThat(metrics.getLatencyMax()).isPositive().isGreaterThanOrEqualTo(metrics.getLatencyP50());
+
+        registry.registerMBeans("test");
+        try {
+            ObjectName name = new ObjectName(
+                    "org.nuxeo.ai.sdk.rest:type=InsightMetrics,name=\"test\",endpoint=Model.PREDICT");
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Calls")).isEqualTo(2L);
+        } finally {
+            registry.unregisterMBeans();
+        }
+    }
+
+    @Test
+    public void shouldRecordConnectFailures() throws Exception {
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+        RetryPolicy noRetry = new RetryPolicy.Builder().setMaxAttempts(1).build();
+        InsightClient client = getInsightClient(
+                getConfigurationBuilder().setMetricsRegistry(registry).setRetryPolicy(noRetry));
+        wireMockRule.stop();
+
+        Map<String, Serializable> params = new HashMap<>();
+        params.put(MODEL_NAME_PARAM, "testModel");
+        params.put(DATASOURCE_PARAM, "dev");
+        TensorInstances instances = new TensorInstances("a doc id", Collections.emptyList());
+        assertThat((InsightResponse) client.api(API.Model.PREDICT).call(params, instances)).isNull();
+
+        EndpointMetrics metrics = registry.getMetrics(API.Model.PREDICT);
+        assertThat(metrics.getCalls()).isEqualTo(1);
+        assertThat(metrics.getFailures()).isEqualTo(1);
+        assertThat(metrics.getInFlight()).isZero();
+    }
+
+    @Test
+    public void shouldServeStaleModelsWhileRevalidating() throws Exception {
+        String url = "/api/v1/ai/test/models?properties=ai_model&publishState=published&label=cached";
+        String body = "{\"entity-type\":\"documents\",\"entries\":[{\"uid\":\"model-1\","
+                + "\"properties\":{\"ai_model:name\":\"cachedModel\"}}]}";
+        wireMockRule.stubFor(get(urlEqualTo(url)).atPriority(2)
+                                                 .willReturn(aResponse().withStatus(200)
+                                                                        .withHeader("Content-Type", "application/json")
+                                                                        .withHeader(ETAG_HEADER, "\"v1\"")
+                                                                        .withBody(body)));
+        wireMockRule.stubFor(get(urlEqualTo(url)).atPriority(1)
+                                                 .withHeader(IF_NONE_MATCH_HEADER, equalTo("\"v1\""))
+                                                 .willReturn(aResponse().withStatus(304)));
+
+        InsightClient client = getInsightClient(getConfigurationBuilder().setModelCacheTtl(Duration.ofMillis(50)));
+        Map<String, Serializable> params = Collections.singletonMap(LABEL_PARAM, "cached");
+        List<ModelDescriptor> models = client.api(API.Model.PUBLISHED).call(params);
+        assertThat(models).extracting(ModelDescriptor::getName).containsExactly("cachedModel");
+        assertThat((List<ModelDescriptor>) client.api(API.Model.PUBLISHED).call(params)).isSameAs(models);
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo(url)));
+
+        Thread.sleep(100);
+        CompletableFuture<List<ModelDescriptor>> stale = client.api(API.Model.PUBLISHED).callAsync(params, null);
+        assertThat(stale.isDone()).isTrue();
+        assertThat(stale.join()).isSameAs(models);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getModelCache().isRevalidating(
+                new ModelCache.Key("test", API.Model.PUBLISHED, "cached", null))) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo(url)).withHeader(IF_NONE_MATCH_HEADER, equalTo("\"v1\"")));
+        assertThat((List<ModelDescriptor>) client.api(API.Model.PUBLISHED).call(params)).isSameAs(models);
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo(url)));
+    }
 }
@@ -0,0 +1,331 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.annotation.Nullable;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Lazily parsed corpus delta of a model, iterating over its outputs straight from the underlying stream.
+ * <pre>
+ * {
+ *   "query": "SELECT * FROM Document WHERE dc:title IS NOT NULL",
+ *   "inputs": [{"name": "file:content", "type": "img"}],
+ *   "outputs": [
+ *     {"name": "dc:title", "output_name": null, "multi_class": true, "categories": ["..."], "type": "cat"}
+ *   ],
+ *   "modelId": null,
+ *   "start": null,
+ *   "end": 1571155442461
+ * }
+ * </pre>
+ * Only the output being iterated is held in memory. Fields preceding {@code outputs} are available right away, the
+ * ones following it once the iteration is over. The delta is closed, with the resource it was read from, when the
+ * outputs are exhausted or on {@link #close()}.
+ */
+public class CorpusDelta implements Iterator<CorpusDelta.Output>, Closeable {
+
+    protected final JsonParser parser;
+
+    protected final Closeable resource;
+
+    protected String query;
+
+    protected List<PropertyType> inputs = Collections.emptyList();
+
+    protected String modelId;
+
+    protected Long start;
+
+    protected Long end;
+
+    protected boolean inOutputs;
+
+    protected boolean closed;
+
+    protected Output next;
+
+    protected CorpusDelta(JsonParser parser, @Nullable Closeable resource) {
+        this.parser = parser;
+        this.resource = resource;
+    }
+
+    /**
+     * @param parser   positioned before or on the start of the delta object
+     * @param resource closed with the delta, such as the response holding the stream
+     * @return {@link CorpusDelta} positioned before its first output
+     */
+    public static CorpusDelta read(JsonParser parser, @Nullable Closeable resource) throws IOException {
+        JsonToken token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a corpus delta object but got " + token);
+        }
+
+        CorpusDelta delta = new CorpusDelta(parser, resource);
+        delta.readFields();
+        return delta;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+
+        try {
+            while (inOutputs) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    next = readOutput();
+                    return true;
+                } else if (token == JsonToken.END_ARRAY) {
+                    inOutputs = false;
+                    readFields();
+                } else if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of corpus delta");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Output next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Output output = next;
+        next = null;
+        return output;
+    }
+
+    /**
+     * @return sequential {@link Stream} of the remaining outputs, closing the delta when closed
+     */
+    public Stream<Output> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(this::closeQuietly);
+    }
+
+    /**
+     * Reads the fields of the delta up to the outputs or the end of the object.
+     */
+    protected void readFields() throws IOException {
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+            case "query":
+                query = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                break;
+            case "modelId":
+                modelId = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                break;
+            case "start":
+                start = value.isNumeric() ? parser.getLongValue() : null;
+                break;
+            case "end":
+                end = value.isNumeric() ? parser.getLongValue() : null;
+                break;
+            case "inputs":
+                inputs = value == JsonToken.START_ARRAY ? readInputs() : Collections.emptyList();
+                break;
+            case "outputs":
+                if (value == JsonToken.START_ARRAY) {
+                    inOutputs = true;
+                    return;
+                }
+                parser.skipChildren();
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        close();
+    }
+
+    protected List<PropertyType> readInputs() throws IOException {
+        List<PropertyType> properties = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            PropertyType property = new PropertyType();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("name".equals(field)) {
+                    property.setName(parser.getValueAsString());
+                } else if ("type".equals(field)) {
+                    property.setType(parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            properties.add(property);
+        }
+        return properties;
+    }
+
+    protected Output readOutput() throws IOException {
+        Output output = new Output();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+            case "name":
+                output.name = parser.getValueAsString();
+                break;
+            case "output_name":
+                output.outputName = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                break;
+            case "type":
+                output.type = parser.getValueAsString();
+                break;
+            case "multi_class":
+                output.multiClass = value == JsonToken.VALUE_TRUE;
+                break;
+            case "categories":
+                if (value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        output.categories.add(parser.getValueAsString());
+                        parser.skipChildren();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        return output;
+    }
+
+    @Nullable
+    public String getQuery() {
+        return query;
+    }
+
+    public List<PropertyType> getInputs() {
+        return inputs;
+    }
+
+    @Nullable
+    public String getModelId() {
+        return modelId;
+    }
+
+    @Nullable
+    public Long getStart() {
+        return start;
+    }
+
+    @Nullable
+    public Long getEnd() {
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        inOutputs = false;
+        try {
+            parser.close();
+        } finally {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+
+    protected void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Output of a corpus delta
+     */
+    public static class Output {
+
+        protected String name;
+
+        protected String outputName;
+
+        protected String type;
+
+        protected boolean multiClass;
+
+        protected final List<String> categories = new ArrayList<>();
+
+        public String getName() {
+            return name;
+        }
+
+        @Nullable
+        public String getOutputName() {
+            return outputName;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isMultiClass() {
+            return multiClass;
+        }
+
+        public List<String> getCategories() {
+            return categories;
+        }
+
+        @Override
+        public String toString() {
+            return "Output{" + "name='" + name + '\'' + ", type='" + type + '\'' + ", multiClass=" + multiClass
+                    + ", categories=" + categories.size() + '}';
+        }
+    }
+}
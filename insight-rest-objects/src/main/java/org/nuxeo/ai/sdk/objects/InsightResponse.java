@@ -22,22 +22,24 @@ package org.nuxeo.ai.sdk.objects;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 
 /**
  * Represents a response from Insight Cloud
@@ -83,21 +85,131 @@ public class InsightResponse implements Serializable {
 
     private static final Logger log = LogManager.getLogger(InsightResponse.class);
 
+    /**
+     * Deserialization attribute of an {@link ObjectReader}: maximal number of labels to keep per output, see
+     * {@link #reader(ObjectMapper, int, float)}
+     */
+    public static final String TOP_K_ATTRIBUTE = InsightResponse.class.getName() + ".topK";
+
+    /**
+     * Deserialization attribute of an {@link ObjectReader}: minimal confidence of the labels to keep, see
+     * {@link #reader(ObjectMapper, int, float)}
+     */
+    public static final String MIN_CONFIDENCE_ATTRIBUTE = InsightResponse.class.getName() + ".minConfidence";
+
     /**
      * Map{ output_name: { category1: prob1 ..... } }
      */
-    protected Map<String, List<Label>> labels;
+    protected Map<String, ScoredLabels> labels;
+
+    /**
+     * Boxed view of {@link #labels}, materialized on demand
+     */
+    protected transient Map<String, List<Label>> labelLists;
 
     public InsightResponse(@JsonProperty("labels") Map<String, List<Label>> labels) {
-        this.labels = labels;
+        setLabels(labels);
+    }
+
+    /**
+     * @param outputs {@link ScoredLabels} of each output
+     * @return {@link InsightResponse} holding the given compact labels
+     */
+    public static InsightResponse of(Map<String, ScoredLabels> outputs) {
+        InsightResponse response = new InsightResponse(null);
+        response.labels = outputs;
+        return response;
+    }
+
+    /**
+     * @param mapper        {@link ObjectMapper} to read with
+     * @param topK          maximal number of labels kept per output, negative to keep them all
+     * @param minConfidence minimal confidence of the labels kept
+     * @return {@link ObjectReader} of {@link InsightResponse} keeping only the best labels of each output
+     */
+    public static ObjectReader reader(ObjectMapper mapper, int topK, float minConfidence) {
+        return mapper.readerFor(InsightResponse.class)
+                     .withAttribute(TOP_K_ATTRIBUTE, topK)
+                     .withAttribute(MIN_CONFIDENCE_ATTRIBUTE, minConfidence);
+    }
+
+    /**
+     * Reads every result of a response of Insight Cloud into its own {@link InsightResponse}, such as the predictions
+     * of a batch of instances.
+     *
+     * @param jp            parser positioned before or on the start of the response
+     * @param topK          maximal number of labels kept per output, negative to keep them all
+     * @param minConfidence minimal confidence of the labels kept
+     * @return {@link InsightResponse} of each result, in response order
+     */
+    public static List<InsightResponse> readResults(JsonParser jp, int topK, float minConfidence) throws IOException {
+        JsonToken token = jp.currentToken() != null ? jp.currentToken() : jp.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(jp, "Expected a response object but got " + token);
+        }
+
+        ResultDeserializer deserializer = new ResultDeserializer();
+        List<InsightResponse> responses = new ArrayList<>();
+        for (token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            String field = jp.getCurrentName();
+            if (jp.nextToken() == JsonToken.START_ARRAY && "results".equals(field)) {
+                while (jp.nextToken() == JsonToken.START_OBJECT) {
+                    Map<String, ScoredLabels> outputs = new HashMap<>();
+                    deserializer.readResult(jp, outputs);
+                    responses.add(InsightResponse.of(ResultDeserializer.retain(outputs, topK, minConfidence)));
+                }
+            } else {
+                jp.skipChildren();
+            }
+        }
+        return responses;
     }
 
+    /**
+     * @return labels of every output, boxed on first call; prefer {@link #getOutputs()} and the top-k and threshold
+     * accessors on large vocabularies
+     */
     public Map<String, List<Label>> getLabels() {
-        return labels;
+        if (labelLists == null && labels != null) {
+            Map<String, List<Label>> lists = new HashMap<>();
+            labels.forEach((output, scored) -> lists.put(output, scored != null ? scored.toLabels() : null));
+            labelLists = lists;
+        }
+        return labelLists;
     }
 
     public void setLabels(Map<String, List<Label>> labels) {
-        this.labels = labels;
+        if (labels == null) {
+            this.labels = null;
+        } else {
+            this.labels = new HashMap<>();
+            labels.forEach((output, list) -> this.labels.put(output, list != null ? ScoredLabels.of(list) : null));
+        }
+        this.labelLists = null;
+    }
+
+    /**
+     * @return compact labels of every output
+     */
+    @JsonIgnore
+    public Map<String, ScoredLabels> getOutputs() {
+        return labels;
+    }
+
+    /**
+     * @return the {@code k} labels of highest confidence of the output, by decreasing confidence
+     */
+    public List<Label> getTopLabels(String output, int k) {
+        ScoredLabels scored = labels != null ? labels.get(output) : null;
+        return scored != null ? scored.top(k) : Collections.emptyList();
+    }
+
+    /**
+     * @return the labels of the output whose confidence is at least {@code threshold}
+     */
+    public List<Label> getLabelsAbove(String output, float threshold) {
+        ScoredLabels scored = labels != null ? labels.get(output) : null;
+        return scored != null ? scored.above(threshold) : Collections.emptyList();
     }
 
     public static class Label {
@@ -151,6 +263,12 @@ public class InsightResponse implements Serializable {
         }
     }
 
+    /**
+     * Streams the response into {@link Label}s in a single pass, without building an intermediate tree.
+     * Both the internal shape, {@code {"labels": {"output": [{"name": ..., "confidence": ...}]}}}, and the shape sent
+     * by Insight Cloud are supported. As outputs can precede their names, the probabilities and labels of a result
+     * are buffered in primitive arrays until the end of the result.
+     */
     public static class ResultDeserializer extends StdDeserializer<InsightResponse> {
 
         protected ResultDeserializer() {
@@ -162,52 +280,143 @@ public class InsightResponse implements Serializable {
         }
 
         @Override
-        public InsightResponse deserialize(JsonParser jp, DeserializationContext ctx)
-                throws IOException, JsonProcessingException {
-            JsonNode node = jp.getCodec().readTree(jp);
-
-            if (node.has("labels")) {
-                // coming from internal usage
-                TypeReference<Map<String, List<Label>>> ref = new TypeReference<Map<String, List<Label>>>() {
-                };
-                Map<String, List<Label>> probabilities = MAPPER.readValue(node.with("labels").toString(), ref);
-                return new InsightResponse(probabilities);
+        public InsightResponse deserialize(JsonParser jp, DeserializationContext ctx) throws IOException {
+            if (jp.currentToken() != JsonToken.START_OBJECT) {
+                return (InsightResponse) ctx.handleUnexpectedToken(InsightResponse.class, jp);
             }
 
-            Map<String, List<Label>> probabilities = new HashMap<>();
-            // deserialize from external usage. Matter for change when a common SDK introduced
-            node.withArray("results").elements().forEachRemaining(elem -> {
-                JsonNode jsonNode = elem.withArray(JSON_OUTPUTS);
-
-                jsonNode.elements().forEachRemaining(outputNode -> {
-                    String outputName = outputNode.asText();
-                    List<Label> labels = new ArrayList<>();
-                    probabilities.put(outputName, labels);
-
-                    if (!elem.hasNonNull(outputName) || !elem.hasNonNull(outputName + JSON_LABELS)) {
-                        log.warn("Either {} or its label are null", outputName);
-                        return;
+            Object topK = ctx.getAttribute(TOP_K_ATTRIBUTE);
+            Object minConfidence = ctx.getAttribute(MIN_CONFIDENCE_ATTRIBUTE);
+            int k = topK instanceof Number ? ((Number) topK).intValue() : -1;
+            float threshold = minConfidence instanceof Number ? ((Number) minConfidence).floatValue() :
+                    Float.NEGATIVE_INFINITY;
+
+            Map<String, ScoredLabels> probabilities = new HashMap<>();
+            Map<String, ScoredLabels> internal = null;
+            for (JsonToken token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+                String field = jp.getCurrentName();
+                token = jp.nextToken();
+                if ("labels".equals(field) && token == JsonToken.START_OBJECT) {
+                    // coming from internal usage
+                    internal = readLabels(jp);
+                } else if ("results".equals(field) && token == JsonToken.START_ARRAY) {
+                    // deserialize from external usage. Matter for change when a common SDK introduced
+                    while (jp.nextToken() == JsonToken.START_OBJECT) {
+                        readResult(jp, probabilities);
                     }
+                } else {
+                    jp.skipChildren();
+                }
+            }
 
-                    ArrayNode outputProbabilities = (ArrayNode) elem.get(outputName);
-                    ArrayNode outputLabels = (ArrayNode) elem.get(outputName + JSON_LABELS);
+            return InsightResponse.of(retain(internal != null ? internal : probabilities, k, threshold));
+        }
 
-                    if (outputLabels.size() == outputProbabilities.size()) {
-                        for (int i = 0; i < outputLabels.size(); i++) {
-                            String label = outputLabels.get(i).asText();
-                            float confidence = outputProbabilities.get(i).floatValue();
+        protected static Map<String, ScoredLabels> retain(Map<String, ScoredLabels> outputs, int k, float threshold) {
+            if (k >= 0 || threshold != Float.NEGATIVE_INFINITY) {
+                outputs.replaceAll((output, scored) -> scored != null ? scored.retain(k, threshold) : null);
+            }
+            return outputs;
+        }
 
-                            Label res = new Label(label, confidence);
-                            labels.add(res);
+        protected Map<String, ScoredLabels> readLabels(JsonParser jp) throws IOException {
+            Map<String, ScoredLabels> probabilities = new HashMap<>();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String output = jp.getCurrentName();
+                if (jp.nextToken() != JsonToken.START_ARRAY) {
+                    jp.skipChildren();
+                    probabilities.put(output, null);
+                    continue;
+                }
+
+                String[] names = new String[16];
+                float[] confidences = new float[16];
+                int size = 0;
+                while (jp.nextToken() == JsonToken.START_OBJECT) {
+                    if (size == names.length) {
+                        names = Arrays.copyOf(names, size * 2);
+                        confidences = Arrays.copyOf(confidences, size * 2);
+                    }
+                    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = jp.getCurrentName();
+                        JsonToken value = jp.nextToken();
+                        if ("name".equals(field)) {
+                            names[size] = value == JsonToken.VALUE_NULL ? null : ScoredLabels.shared(
+                                    jp.getValueAsString());
+                        } else if ("confidence".equals(field)) {
+                            confidences[size] = value.isNumeric() ? jp.getFloatValue() : 0;
+                        } else {
+                            jp.skipChildren();
                         }
-                    } else {
-                        log.warn("Mismatch of labels and probabilities cardinality");
                     }
+                    size++;
+                }
+                probabilities.put(output,
+                        new ScoredLabels(Arrays.copyOf(names, size), Arrays.copyOf(confidences, size)));
+            }
+            return probabilities;
+        }
 
-                });
-            });
+        protected void readResult(JsonParser jp, Map<String, ScoredLabels> probabilities) throws IOException {
+            List<String> outputs = new ArrayList<>();
+            Map<String, float[]> confidences = new HashMap<>();
+            Map<String, String[]> names = new HashMap<>();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                if (jp.nextToken() != JsonToken.START_ARRAY) {
+                    jp.skipChildren();
+                } else if (JSON_OUTPUTS.equals(field)) {
+                    while (jp.nextToken() != JsonToken.END_ARRAY) {
+                        outputs.add(jp.getValueAsString());
+                        jp.skipChildren();
+                    }
+                } else if (field.endsWith(JSON_LABELS)) {
+                    names.put(field, readNames(jp));
+                } else {
+                    confidences.put(field, readConfidences(jp));
+                }
+            }
 
-            return new InsightResponse(probabilities);
+            for (String output : outputs) {
+                float[] outputConfidences = confidences.get(output);
+                String[] outputNames = names.get(output + JSON_LABELS);
+                if (outputConfidences == null || outputNames == null) {
+                    log.warn("Either {} or its label are null", output);
+                    probabilities.put(output, ScoredLabels.EMPTY);
+                } else if (outputConfidences.length != outputNames.length) {
+                    log.warn("Mismatch of labels and probabilities cardinality");
+                    probabilities.put(output, ScoredLabels.EMPTY);
+                } else {
+                    probabilities.put(output, new ScoredLabels(outputNames, outputConfidences));
+                }
+            }
+        }
+
+        protected String[] readNames(JsonParser jp) throws IOException {
+            String[] values = new String[16];
+            int size = 0;
+            for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = token.isScalarValue() && token != JsonToken.VALUE_NULL ? ScoredLabels.shared(
+                        jp.getValueAsString()) : "";
+                jp.skipChildren();
+            }
+            return Arrays.copyOf(values, size);
+        }
+
+        protected float[] readConfidences(JsonParser jp) throws IOException {
+            float[] values = new float[16];
+            int size = 0;
+            for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = token.isNumeric() ? jp.getFloatValue() : 0;
+                jp.skipChildren();
+            }
+            return Arrays.copyOf(values, size);
         }
     }
 }
@@ -0,0 +1,323 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Descriptor of an AI_Model document, only holds the properties needed to pick and call a model.
+ * <p>
+ * Read with a token streaming parser from the Nuxeo document JSON, every other property of the document is skipped
+ * without being materialized.
+ * <pre>
+ * {
+ *   "entity-type": "document",
+ *   "uid": "6b93bace-4ed3-408f-8efe-79a8dd287199",
+ *   "title": "Components",
+ *   "properties": {
+ *     "ai_model:name": "Components",
+ *     "ai_model:labels": ["dev"],
+ *     "ai_model:datasource": "dev",
+ *     "ai_model:inputs": [{"name": "dc:title", "type": "txt"}],
+ *     "ai_model:outputs": [{"name": "tc:components", "type": "cat"}],
+ *     "ai_model:deployment_information": {"publishing_state": "published"}
+ *   }
+ * }
+ * </pre>
+ */
+@JsonDeserialize(using = ModelDescriptor.ModelDescriptorDeserializer.class)
+public class ModelDescriptor implements Serializable {
+
+    private static final long serialVersionUID = 2853437839146361724L;
+
+    public static final String PUBLISHED_STATE = "published";
+
+    protected final String id;
+
+    protected final String name;
+
+    protected final List<String> labels;
+
+    protected final String datasource;
+
+    protected final String publishState;
+
+    protected final List<PropertyType> inputs;
+
+    protected final List<PropertyType> outputs;
+
+    public ModelDescriptor(@Nonnull String id, @Nullable String name, @Nonnull List<String> labels,
+            @Nullable String datasource, @Nullable String publishState, @Nonnull List<PropertyType> inputs,
+            @Nonnull List<PropertyType> outputs) {
+        this.id = Objects.requireNonNull(id);
+        this.name = name;
+        this.labels = Collections.unmodifiableList(labels);
+        this.datasource = datasource;
+        this.publishState = publishState;
+        this.inputs = Collections.unmodifiableList(inputs);
+        this.outputs = Collections.unmodifiableList(outputs);
+    }
+
+    /**
+     * Reads the models of a Nuxeo documents listing, {@code {"entity-type": "documents", "entries": [...]}}.
+     *
+     * @param parser positioned before or on the start of the listing
+     * @return descriptors of the listed models, in order
+     */
+    public static List<ModelDescriptor> parseDocuments(JsonParser parser) throws IOException {
+        List<ModelDescriptor> models = new ArrayList<>();
+        if (parser.currentToken() == null) {
+            parser.nextToken();
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return models;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("entries".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    models.add(parse(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Reads a model document.
+     *
+     * @param parser positioned on the start of the document
+     */
+    public static ModelDescriptor parse(JsonParser parser) throws IOException {
+        String id = null;
+        String title = null;
+        String name = null;
+        List<String> labels = Collections.emptyList();
+        String datasource = null;
+        String publishState = null;
+        List<PropertyType> inputs = Collections.emptyList();
+        List<PropertyType> outputs = Collections.emptyList();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("uid".equals(field)) {
+                id = parser.getValueAsString();
+            } else if ("title".equals(field)) {
+                title = parser.getValueAsString();
+            } else if ("properties".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String property = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (property) {
+                    case "ai_model:name":
+                        name = parser.getValueAsString();
+                        break;
+                    case "ai_model:labels":
+                        labels = parseStrings(parser);
+                        break;
+                    case "ai_model:datasource":
+                        datasource = parser.getValueAsString();
+                        break;
+                    case "ai_model:inputs":
+                        inputs = parsePropertyTypes(parser);
+                        break;
+                    case "ai_model:outputs":
+                        outputs = parsePropertyTypes(parser);
+                        break;
+                    case "ai_model:deployment_information":
+                        publishState = parseField(parser, "publishing_state");
+                        break;
+                    default:
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (id == null) {
+            throw new IOException("Model document without uid");
+        }
+        return new ModelDescriptor(id, name != null ? name : title, labels, datasource, publishState, inputs,
+                outputs);
+    }
+
+    protected static List<String> parseStrings(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return Collections.emptyList();
+        }
+
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken().isScalarValue()) {
+                values.add(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    protected static List<PropertyType> parsePropertyTypes(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return Collections.emptyList();
+        }
+
+        List<PropertyType> properties = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String name = null;
+            String type = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("name".equals(field)) {
+                    name = parser.getValueAsString();
+                } else if ("type".equals(field)) {
+                    type = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            properties.add(new PropertyType(name, type));
+        }
+        return properties;
+    }
+
+    /**
+     * @return value of a scalar field of the current object, its other fields are skipped
+     */
+    protected static String parseField(JsonParser parser, String name) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                result = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return name of the model, the document title when the model has no name
+     */
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public boolean hasLabel(String label) {
+        return labels.contains(label);
+    }
+
+    @Nullable
+    public String getDatasource() {
+        return datasource;
+    }
+
+    @Nullable
+    public String getPublishState() {
+        return publishState;
+    }
+
+    public boolean isPublished() {
+        return PUBLISHED_STATE.equals(publishState);
+    }
+
+    @Nonnull
+    public List<PropertyType> getInputs() {
+        return inputs;
+    }
+
+    @Nonnull
+    public List<PropertyType> getOutputs() {
+        return outputs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ModelDescriptor that = (ModelDescriptor) o;
+        return id.equals(that.id) && Objects.equals(name, that.name) && labels.equals(that.labels)
+                && Objects.equals(datasource, that.datasource) && Objects.equals(publishState, that.publishState)
+                && inputs.equals(that.inputs) && outputs.equals(that.outputs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, labels, datasource, publishState, inputs, outputs);
+    }
+
+    @Override
+    public String toString() {
+        return "ModelDescriptor{" + "id='" + id + '\'' + ", name='" + name + '\'' + ", labels=" + labels
+                + ", publishState='" + publishState + '\'' + '}';
+    }
+
+    public static class ModelDescriptorDeserializer extends JsonDeserializer<ModelDescriptor> {
+        @Override
+        public ModelDescriptor deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
+                throws IOException {
+            return parse(jsonParser);
+        }
+    }
+}
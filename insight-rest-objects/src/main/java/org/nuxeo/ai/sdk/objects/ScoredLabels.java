@@ -0,0 +1,300 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compact labels of a prediction output: parallel arrays of label names and confidences.
+ * <p>
+ * Names are shared through a weak dictionary, so that the vocabulary of a model is held once whatever the number of
+ * responses, and released once no response holds it anymore. Top-k and threshold accessors only allocate the labels
+ * they return.
+ */
+public class ScoredLabels implements Serializable {
+
+    private static final long serialVersionUID = 6081385227359425315L;
+
+    public static final ScoredLabels EMPTY = new ScoredLabels(new String[0], new float[0]);
+
+    protected static final Dictionary DICTIONARY = new Dictionary(16);
+
+    protected final String[] names;
+
+    protected final float[] confidences;
+
+    /**
+     * Arrays are owned by the instance and must not be modified afterwards.
+     *
+     * @param names       of the labels
+     * @param confidences of the labels, in the same order
+     */
+    public ScoredLabels(String[] names, float[] confidences) {
+        if (names.length != confidences.length) {
+            throw new IllegalArgumentException("Mismatch of labels and probabilities cardinality");
+        }
+
+        this.names = names;
+        this.confidences = confidences;
+    }
+
+    public static ScoredLabels of(List<InsightResponse.Label> labels) {
+        String[] names = new String[labels.size()];
+        float[] confidences = new float[labels.size()];
+        for (int i = 0; i < names.length; i++) {
+            InsightResponse.Label label = labels.get(i);
+            names[i] = shared(label.getName());
+            confidences[i] = label.getConfidence();
+        }
+        return new ScoredLabels(names, confidences);
+    }
+
+    /**
+     * @return the shared instance of the name
+     */
+    public static String shared(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        return DICTIONARY.share(name);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public float getConfidence(int index) {
+        return confidences[index];
+    }
+
+    /**
+     * @return all the labels, in their original order
+     */
+    public List<InsightResponse.Label> toLabels() {
+        List<InsightResponse.Label> labels = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            labels.add(new InsightResponse.Label(names[i], confidences[i]));
+        }
+        return labels;
+    }
+
+    /**
+     * @return the {@code k} labels of highest confidence, by decreasing confidence
+     */
+    public List<InsightResponse.Label> top(int k) {
+        int[] indexes = topIndexes(k);
+        List<InsightResponse.Label> labels = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            labels.add(new InsightResponse.Label(names[index], confidences[index]));
+        }
+        return labels;
+    }
+
+    /**
+     * @return the labels whose confidence is at least {@code threshold}, in their original order
+     */
+    public List<InsightResponse.Label> above(float threshold) {
+        int count = 0;
+        for (float confidence : confidences) {
+            count += confidence >= threshold ? 1 : 0;
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+
+        List<InsightResponse.Label> labels = new ArrayList<>(count);
+        for (int i = 0; i < names.length; i++) {
+            if (confidences[i] >= threshold) {
+                labels.add(new InsightResponse.Label(names[i], confidences[i]));
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Keeps the labels of confidence at least {@code threshold}, then the {@code k} best of them.
+     *
+     * @param k         maximal number of labels to keep, negative to keep them all
+     * @param threshold minimal confidence of the labels to keep
+     * @return retained labels in their original order, this instance when all are retained
+     */
+    public ScoredLabels retain(int k, float threshold) {
+        boolean[] kept = new boolean[names.length];
+        int count = 0;
+        if (k >= 0 && k < names.length) {
+            for (int index : topIndexes(k)) {
+                kept[index] = confidences[index] >= threshold;
+                count += kept[index] ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < names.length; i++) {
+                kept[i] = confidences[i] >= threshold;
+                count += kept[i] ? 1 : 0;
+            }
+        }
+        if (count == names.length) {
+            return this;
+        }
+
+        String[] retainedNames = new String[count];
+        float[] retainedConfidences = new float[count];
+        for (int i = 0, j = 0; i < names.length; i++) {
+            if (kept[i]) {
+                retainedNames[j] = names[i];
+                retainedConfidences[j++] = confidences[i];
+            }
+        }
+        return new ScoredLabels(retainedNames, retainedConfidences);
+    }
+
+    /**
+     * Selects the best labels with a min heap of {@code k} indexes.
+     *
+     * @return indexes of the {@code k} labels of highest confidence, by decreasing confidence
+     */
+    protected int[] topIndexes(int k) {
+        int size = Math.max(0, Math.min(k, names.length));
+        int[] heap = new int[size];
+        if (size == 0) {
+            return heap;
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            if (i < size) {
+                heap[i] = i;
+                siftUp(heap, i);
+            } else if (confidences[i] > confidences[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, size);
+            }
+        }
+
+        // pop the minimum to the end until the heap is sorted by decreasing confidence
+        for (int end = size - 1; end > 0; end--) {
+            int min = heap[0];
+            heap[0] = heap[end];
+            heap[end] = min;
+            siftDown(heap, end);
+        }
+        return heap;
+    }
+
+    protected void siftUp(int[] heap, int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (confidences[heap[parent]] <= confidences[heap[position]]) {
+                return;
+            }
+            swap(heap, parent, position);
+            position = parent;
+        }
+    }
+
+    protected void siftDown(int[] heap, int size) {
+        int position = 0;
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && confidences[heap[left]] < confidences[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && confidences[heap[right]] < confidences[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(heap, position, smallest);
+            position = smallest;
+        }
+    }
+
+    protected static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ScoredLabels that = (ScoredLabels) o;
+        return Arrays.equals(names, that.names) && Arrays.equals(confidences, that.confidences);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(names) + Arrays.hashCode(confidences);
+    }
+
+    @Override
+    public String toString() {
+        return "ScoredLabels{" + "size=" + names.length + ", top=" + top(3) + '}';
+    }
+
+    /**
+     * Weak dictionary of names, striped by hash to limit contention: an entry is collected with the last label holding
+     * its name.
+     */
+    protected static class Dictionary {
+
+        protected final Map<String, WeakReference<String>>[] stripes;
+
+        @SuppressWarnings("unchecked")
+        protected Dictionary(int stripeCount) {
+            stripes = new Map[Integer.highestOneBit(stripeCount)];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new WeakHashMap<>();
+            }
+        }
+
+        protected String share(String name) {
+            int hash = name.hashCode();
+            Map<String, WeakReference<String>> stripe = stripes[(hash ^ hash >>> 16) & (stripes.length - 1)];
+            synchronized (stripe) {
+                WeakReference<String> reference = stripe.get(name);
+                String existing = reference != null ? reference.get() : null;
+                if (existing != null) {
+                    return existing;
+                }
+                stripe.put(name, new WeakReference<>(name));
+                return name;
+            }
+        }
+    }
+}
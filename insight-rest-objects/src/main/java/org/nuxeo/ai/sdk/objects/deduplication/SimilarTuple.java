@@ -21,13 +21,11 @@ package org.nuxeo.ai.sdk.objects.deduplication;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
-import java.util.Map;
+import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -67,32 +65,58 @@ public class SimilarTuple implements Serializable {
         return xpath;
     }
 
+    /**
+     * Streams a tuple in a single pass, building the pairs of similar documents straight from the tokens.
+     * Each element of {@code similarDocuments} is an object holding the id of a similar document as key and its xpath
+     * as value; empty elements are skipped and only the first entry of an element is kept.
+     */
     public static class SimilarTupleDeserializer extends JsonDeserializer<SimilarTuple> {
         @Override
-        public SimilarTuple deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
-                throws IOException {
-            TypeReference<Map<String, Object>> ref = new TypeReference<Map<String, Object>>() {
-            };
-            Map<String, Object> object = jsonParser.readValueAs(ref);
-            String docId = (String) object.get("documentId");
-            String xpath = (String) object.get("xpath");
-            @SuppressWarnings("unchecked")
-            List<Map<String, String>> similarDocumentsList = (List<Map<String, String>>) object.get("similarDocuments");
-            Set<Pair<String, String>> similarDocuments = similarDocumentsList.stream()
-                                                                             .filter(elem -> !elem.isEmpty())
-                                                                             .filter(elem -> elem.keySet()
-                                                                                                 .stream()
-                                                                                                 .findAny()
-                                                                                                 .isPresent())
-                                                                             .map(elem -> {
-                                                                                 String key = elem.keySet()
-                                                                                                  .stream()
-                                                                                                  .findAny()
-                                                                                                  .get();
-                                                                                 return Pair.of(key, elem.get(key));
-                                                                             })
-                                                                             .collect(Collectors.toSet());
+        public SimilarTuple deserialize(JsonParser jp, DeserializationContext ctx) throws IOException {
+            if (jp.currentToken() != JsonToken.START_OBJECT) {
+                return (SimilarTuple) ctx.handleUnexpectedToken(SimilarTuple.class, jp);
+            }
+
+            String docId = null;
+            String xpath = null;
+            Set<Pair<String, String>> similarDocuments = new LinkedHashSet<>();
+            for (JsonToken token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+                String field = jp.getCurrentName();
+                JsonToken value = jp.nextToken();
+                if ("documentId".equals(field)) {
+                    docId = value == JsonToken.VALUE_NULL ? null : jp.getValueAsString();
+                } else if ("xpath".equals(field)) {
+                    xpath = value == JsonToken.VALUE_NULL ? null : jp.getValueAsString();
+                } else if ("similarDocuments".equals(field) && value == JsonToken.START_ARRAY) {
+                    readSimilarDocuments(jp, similarDocuments);
+                } else {
+                    jp.skipChildren();
+                }
+            }
             return new SimilarTuple(docId, xpath, similarDocuments);
         }
+
+        protected void readSimilarDocuments(JsonParser jp, Set<Pair<String, String>> similarDocuments)
+                throws IOException {
+            for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    jp.skipChildren();
+                    continue;
+                }
+
+                Pair<String, String> similar = null;
+                while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                    String id = jp.getCurrentName();
+                    JsonToken value = jp.nextToken();
+                    if (similar == null) {
+                        similar = Pair.of(id, value == JsonToken.VALUE_NULL ? null : jp.getValueAsString());
+                    }
+                    jp.skipChildren();
+                }
+                if (similar != null) {
+                    similarDocuments.add(similar);
+                }
+            }
+        }
     }
 }
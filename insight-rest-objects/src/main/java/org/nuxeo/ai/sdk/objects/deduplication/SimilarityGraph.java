@@ -0,0 +1,442 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects.deduplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Compact undirected graph of the similar document properties read from {@code Dedup.ALL}, see {@link Builder}.
+ * <p>
+ * Document ids and xpaths are dictionary encoded, each vertex being the int of a document property. Edges are kept
+ * once whatever their direction, in a compressed sparse row layout: the neighbors of vertex {@code v} are
+ * {@code adjacency[offsets[v]]} to {@code adjacency[offsets[v + 1] - 1]}, in increasing order. Duplicate clusters
+ * are the connected components of the graph, see {@link #clusters()}.
+ */
+public class SimilarityGraph {
+
+    protected final Dictionary documentIds;
+
+    protected final Dictionary xpaths;
+
+    protected final int[] vertexDocuments;
+
+    protected final int[] vertexXpaths;
+
+    protected final LongIntMap vertices;
+
+    protected final int[] offsets;
+
+    protected final int[] adjacency;
+
+    protected SimilarityGraph(Builder builder, int[] offsets, int[] adjacency) {
+        this.documentIds = builder.documentIds;
+        this.xpaths = builder.xpaths;
+        this.vertexDocuments = Arrays.copyOf(builder.vertexDocuments, builder.vertexCount);
+        this.vertexXpaths = Arrays.copyOf(builder.vertexXpaths, builder.vertexCount);
+        this.vertices = builder.vertices;
+        this.offsets = offsets;
+        this.adjacency = adjacency;
+    }
+
+    public int getVertexCount() {
+        return vertexDocuments.length;
+    }
+
+    /**
+     * @return number of distinct similarities, each counted once whatever its direction
+     */
+    public int getEdgeCount() {
+        return adjacency.length / 2;
+    }
+
+    /**
+     * @return vertex of the document property, -1 when not in the graph
+     */
+    public int getVertex(String documentId, @Nullable String xpath) {
+        int document = documentIds.code(documentId);
+        int path = xpaths.code(xpath);
+        return document < 0 || path < 0 ? -1 : vertices.get(key(document, path));
+    }
+
+    public String getDocumentId(int vertex) {
+        return documentIds.values.get(vertexDocuments[vertex]);
+    }
+
+    public String getXpath(int vertex) {
+        return xpaths.values.get(vertexXpaths[vertex]);
+    }
+
+    public int getDegree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    /**
+     * @return vertices similar to the given one, in increasing order
+     */
+    public int[] getNeighbors(int vertex) {
+        return Arrays.copyOfRange(adjacency, offsets[vertex], offsets[vertex + 1]);
+    }
+
+    /**
+     * Computes the connected components with a concurrent union-find, the edges being linked in parallel.
+     *
+     * @return {@link Clusters} of the vertices
+     */
+    public Clusters clusters() {
+        int count = getVertexCount();
+        AtomicIntegerArray parents = new AtomicIntegerArray(count);
+        IntStream.range(0, count).forEach(vertex -> parents.lazySet(vertex, vertex));
+        IntStream.range(0, count).parallel().forEach(vertex -> {
+            for (int i = offsets[vertex]; i < offsets[vertex + 1]; i++) {
+                if (adjacency[i] > vertex) {
+                    union(parents, vertex, adjacency[i]);
+                }
+            }
+        });
+
+        // roots are the smallest vertex of their component, which numbers clusters by their first vertex
+        int[] roots = IntStream.range(0, count).parallel().map(vertex -> find(parents, vertex)).toArray();
+        int[] clusters = new int[count];
+        int clusterCount = 0;
+        for (int vertex = 0; vertex < count; vertex++) {
+            clusters[vertex] = roots[vertex] == vertex ? clusterCount++ : clusters[roots[vertex]];
+        }
+        int[] sizes = new int[clusterCount];
+        for (int cluster : clusters) {
+            sizes[cluster]++;
+        }
+
+        // counting sort of the vertices by cluster, the members of each cluster being laid out contiguously
+        int[] memberOffsets = new int[clusterCount + 1];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            memberOffsets[cluster + 1] = memberOffsets[cluster] + sizes[cluster];
+        }
+        int[] positions = Arrays.copyOf(memberOffsets, clusterCount);
+        int[] members = new int[count];
+        for (int vertex = 0; vertex < count; vertex++) {
+            members[positions[clusters[vertex]]++] = vertex;
+        }
+        return new Clusters(clusters, sizes, memberOffsets, members);
+    }
+
+    /**
+     * Links the roots of both vertices, the greater root always pointing to the smaller one so that concurrent links
+     * never form a cycle.
+     */
+    protected static void union(AtomicIntegerArray parents, int first, int second) {
+        while (true) {
+            int firstRoot = find(parents, first);
+            int secondRoot = find(parents, second);
+            if (firstRoot == secondRoot) {
+                return;
+            }
+
+            int low = Math.min(firstRoot, secondRoot);
+            int high = Math.max(firstRoot, secondRoot);
+            if (parents.compareAndSet(high, high, low)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the root of the vertex, halving its path on the way.
+     */
+    protected static int find(AtomicIntegerArray parents, int vertex) {
+        int parent;
+        while ((parent = parents.get(vertex)) != vertex) {
+            int grandParent = parents.get(parent);
+            if (parent != grandParent) {
+                parents.compareAndSet(vertex, parent, grandParent);
+            }
+            vertex = grandParent;
+        }
+        return vertex;
+    }
+
+    protected static long key(int document, int xpath) {
+        return (long) document << 32 | xpath & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Duplicate clusters of a {@link SimilarityGraph}, numbered from 0 in the order of their first vertex
+     */
+    public static class Clusters {
+
+        protected final int[] clusters;
+
+        protected final int[] sizes;
+
+        protected final int[] memberOffsets;
+
+        protected final int[] members;
+
+        protected Clusters(int[] clusters, int[] sizes, int[] memberOffsets, int[] members) {
+            this.clusters = clusters;
+            this.sizes = sizes;
+            this.memberOffsets = memberOffsets;
+            this.members = members;
+        }
+
+        public int getCount() {
+            return sizes.length;
+        }
+
+        /**
+         * @return cluster of the vertex
+         */
+        public int getCluster(int vertex) {
+            return clusters[vertex];
+        }
+
+        public int getSize(int cluster) {
+            return sizes[cluster];
+        }
+
+        /**
+         * @return vertices of the cluster, in increasing order
+         */
+        public int[] getMembers(int cluster) {
+            return Arrays.copyOfRange(members, memberOffsets[cluster], memberOffsets[cluster + 1]);
+        }
+
+        /**
+         * @return clusters holding at least the given number of vertices, largest first
+         */
+        public int[] getLargerThan(int minSize) {
+            return IntStream.range(0, sizes.length)
+                            .filter(cluster -> sizes[cluster] >= minSize)
+                            .boxed()
+                            .sorted((first, second) -> Integer.compare(sizes[second], sizes[first]))
+                            .mapToInt(Integer::intValue)
+                            .toArray();
+        }
+    }
+
+    /**
+     * Builds a {@link SimilarityGraph} from {@link SimilarTuple}s, typically page after page of {@code Dedup.ALL}.
+     * The tuples are not retained: only the dictionaries of document ids and xpaths and a {@code long} per edge are
+     * kept until {@link #build()} sorts the edges, drops their duplicates and lays them out. The graph shares the
+     * dictionaries of its builder, which must not be used once built.
+     */
+    public static class Builder {
+
+        protected final Dictionary documentIds = new Dictionary();
+
+        protected final Dictionary xpaths = new Dictionary();
+
+        protected final LongIntMap vertices = new LongIntMap();
+
+        protected int[] vertexDocuments = new int[64];
+
+        protected int[] vertexXpaths = new int[64];
+
+        protected int vertexCount;
+
+        // edges as smaller vertex << 32 | greater vertex
+        protected long[] edges = new long[64];
+
+        protected int edgeCount;
+
+        public Builder add(SimilarTuple tuple) {
+            if (tuple.getDocumentId() == null) {
+                return this;
+            }
+
+            int vertex = vertex(tuple.getDocumentId(), tuple.getXpath());
+            if (tuple.getSimilarDocuments() != null) {
+                for (Pair<String, String> similar : tuple.getSimilarDocuments()) {
+                    if (similar.getKey() != null) {
+                        addEdge(vertex, vertex(similar.getKey(), similar.getValue()));
+                    }
+                }
+            }
+            return this;
+        }
+
+        public Builder addAll(Iterator<SimilarTuple> tuples) {
+            tuples.forEachRemaining(this::add);
+            return this;
+        }
+
+        public Builder addAll(Iterable<SimilarTuple> tuples) {
+            return addAll(tuples.iterator());
+        }
+
+        /**
+         * Adds a similarity between two document properties.
+         */
+        public Builder add(String documentId, @Nullable String xpath, String similarId, @Nullable String similarXpath) {
+            addEdge(vertex(documentId, xpath), vertex(similarId, similarXpath));
+            return this;
+        }
+
+        public SimilarityGraph build() {
+            long[] sorted = Arrays.copyOf(edges, edgeCount);
+            Arrays.parallelSort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+
+            int[] offsets = new int[vertexCount + 1];
+            for (int i = 0; i < unique; i++) {
+                offsets[(int) (sorted[i] >>> 32) + 1]++;
+                offsets[(int) sorted[i] + 1]++;
+            }
+            for (int vertex = 0; vertex < vertexCount; vertex++) {
+                offsets[vertex + 1] += offsets[vertex];
+            }
+
+            // edges sorted by smaller then greater vertex fill every row in increasing order
+            int[] adjacency = new int[unique * 2];
+            int[] positions = Arrays.copyOf(offsets, vertexCount);
+            for (int i = 0; i < unique; i++) {
+                int low = (int) (sorted[i] >>> 32);
+                int high = (int) sorted[i];
+                adjacency[positions[low]++] = high;
+                adjacency[positions[high]++] = low;
+            }
+            return new SimilarityGraph(this, offsets, adjacency);
+        }
+
+        protected int vertex(String documentId, @Nullable String xpath) {
+            long key = key(documentIds.encode(documentId), xpaths.encode(xpath));
+            int vertex = vertices.get(key);
+            if (vertex >= 0) {
+                return vertex;
+            }
+
+            if (vertexCount == vertexDocuments.length) {
+                vertexDocuments = Arrays.copyOf(vertexDocuments, vertexCount * 2);
+                vertexXpaths = Arrays.copyOf(vertexXpaths, vertexCount * 2);
+            }
+            vertexDocuments[vertexCount] = (int) (key >>> 32);
+            vertexXpaths[vertexCount] = (int) key;
+            vertices.put(key, vertexCount);
+            return vertexCount++;
+        }
+
+        protected void addEdge(int first, int second) {
+            if (first == second) {
+                return;
+            }
+
+            if (edgeCount == edges.length) {
+                edges = Arrays.copyOf(edges, edgeCount * 2);
+            }
+            edges[edgeCount++] = key(Math.min(first, second), Math.max(first, second));
+        }
+    }
+
+    /**
+     * Dictionary encoding strings to consecutive ints
+     */
+    protected static class Dictionary {
+
+        protected final Map<String, Integer> codes = new HashMap<>();
+
+        protected final List<String> values = new ArrayList<>();
+
+        protected int code(@Nullable String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        protected int encode(@Nullable String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Open addressing map of {@code long} keys to positive {@code int} values, without boxing
+     */
+    protected static class LongIntMap {
+
+        protected long[] keys = new long[64];
+
+        // value + 1, 0 marking a free slot
+        protected int[] values = new int[64];
+
+        protected int size;
+
+        protected int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        protected void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (values[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == 0) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value + 1;
+        }
+
+        protected void resize() {
+            long[] previousKeys = keys;
+            int[] previousValues = values;
+            keys = new long[previousKeys.length * 2];
+            values = new int[previousValues.length * 2];
+            size = 0;
+            for (int slot = 0; slot < previousKeys.length; slot++) {
+                if (previousValues[slot] != 0) {
+                    put(previousKeys[slot], previousValues[slot] - 1);
+                }
+            }
+        }
+
+        protected static int hash(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ mixed >>> 32);
+        }
+    }
+}
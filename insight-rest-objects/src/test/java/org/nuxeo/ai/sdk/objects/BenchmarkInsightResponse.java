@@ -0,0 +1,159 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * Compares the streaming {@link InsightResponse.ResultDeserializer} with the former tree based one on responses with
+ * many outputs and large label vocabularies.
+ */
+public class BenchmarkInsightResponse {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void shouldMatchTreeDeserializer() throws IOException {
+        String json = generate(3, 50);
+        assertThat(MAPPER.readValue(json, InsightResponse.class).getLabels()).isEqualTo(
+                treeReader().<InsightResponse> readValue(json).getLabels());
+
+        String internal = MAPPER.writeValueAsString(MAPPER.readValue(json, InsightResponse.class));
+        assertThat(MAPPER.readValue(internal, InsightResponse.class).getLabels()).isEqualTo(
+                treeReader().<InsightResponse> readValue(internal).getLabels());
+    }
+
+    @Test
+    public void benchmarkDeserializers() throws Exception {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        ObjectReader streaming = MAPPER.readerFor(InsightResponse.class);
+        ObjectReader tree = treeReader();
+        for (int vocabulary : new int[] { 10, 1000, 10000 }) {
+            byte[] external = generate(8, vocabulary).getBytes();
+            byte[] internal = MAPPER.writeValueAsBytes(streaming.readValue(external));
+            int operations = Math.max(10, 100000 / vocabulary);
+            String suffix = " 8 outputs x " + vocabulary + " labels";
+            double treeExternal = MicroBenchmark.run("tree external" + suffix, operations,
+                    () -> tree.readValue(external));
+            double streamingExternal = MicroBenchmark.run("streaming external" + suffix, operations,
+                    () -> streaming.readValue(external));
+            double treeInternal = MicroBenchmark.run("tree internal" + suffix, operations,
+                    () -> tree.readValue(internal));
+            double streamingInternal = MicroBenchmark.run("streaming internal" + suffix, operations,
+                    () -> streaming.readValue(internal));
+            System.out.printf("speed up: %.1fx external, %.1fx internal%n", treeExternal / streamingExternal,
+                    treeInternal / streamingInternal);
+        }
+    }
+
+    protected static String generate(int outputs, int vocabulary) throws IOException {
+        Random random = new Random(42);
+        Map<String, Object> result = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (int o = 0; o < outputs; o++) {
+            String output = "output:" + o;
+            names.add(output);
+            List<Float> confidences = new ArrayList<>();
+            List<String> labels = new ArrayList<>();
+            for (int i = 0; i < vocabulary; i++) {
+                confidences.add(random.nextFloat());
+                labels.add("label_" + o + "_" + i);
+            }
+            result.put(output, confidences);
+            result.put(output + InsightResponse.JSON_LABELS, labels);
+        }
+        result.put(InsightResponse.JSON_OUTPUTS, names);
+        return MAPPER.writeValueAsString(singletonMap("results", singletonList(result)));
+    }
+
+    protected static ObjectReader treeReader() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.addMixIn(InsightResponse.class, TreeMixIn.class);
+        return mapper.readerFor(InsightResponse.class);
+    }
+
+    @JsonDeserialize(using = TreeDeserializer.class)
+    protected abstract static class TreeMixIn {
+    }
+
+    /**
+     * Former deserializer: reads a full tree, then re-serializes and re-parses the internal labels.
+     */
+    protected static class TreeDeserializer extends StdDeserializer<InsightResponse> {
+
+        public TreeDeserializer() {
+            super(InsightResponse.class);
+        }
+
+        @Override
+        public InsightResponse deserialize(JsonParser jp, DeserializationContext ctx) throws IOException {
+            JsonNode node = jp.getCodec().readTree(jp);
+            if (node.has("labels")) {
+                TypeReference<Map<String, List<InsightResponse.Label>>> ref =
+                        new TypeReference<Map<String, List<InsightResponse.Label>>>() {
+                        };
+                return new InsightResponse(MAPPER.readValue(node.with("labels").toString(), ref));
+            }
+
+            Map<String, List<InsightResponse.Label>> probabilities = new HashMap<>();
+            node.withArray("results").elements().forEachRemaining(elem -> {
+                elem.withArray(InsightResponse.JSON_OUTPUTS).elements().forEachRemaining(outputNode -> {
+                    String outputName = outputNode.asText();
+                    List<InsightResponse.Label> labels = new ArrayList<>();
+                    probabilities.put(outputName, labels);
+                    if (!elem.hasNonNull(outputName) || !elem.hasNonNull(outputName + InsightResponse.JSON_LABELS)) {
+                        return;
+                    }
+
+                    ArrayNode outputProbabilities = (ArrayNode) elem.get(outputName);
+                    ArrayNode outputLabels = (ArrayNode) elem.get(outputName + InsightResponse.JSON_LABELS);
+                    if (outputLabels.size() == outputProbabilities.size()) {
+                        for (int i = 0; i < outputLabels.size(); i++) {
+                            labels.add(new InsightResponse.Label(outputLabels.get(i).asText(),
+                                    outputProbabilities.get(i).floatValue()));
+                        }
+                    }
+                });
+            });
+            return new InsightResponse(probabilities);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.objects.deduplication.ScrollableResult;
+import org.nuxeo.ai.sdk.objects.deduplication.SimilarTuple;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Times the streaming {@link SimilarTuple.SimilarTupleDeserializer} against the former map based one on large
+ * {@code Dedup.ALL} pages, see {@link TestScrollableResult} for its behavior.
+ */
+public class BenchmarkSimilarTuple {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void benchmarkDeserializers() throws Exception {
+        assumeTrue(MicroBenchmark.isEnabled());
+
+        ObjectReader streaming = MAPPER.readerFor(ScrollableResult.class);
+        ObjectReader map = mapReader();
+        for (int tuples : new int[] { 100, 1000, 10000 }) {
+            byte[] page = generate(tuples, 10).getBytes();
+            int operations = Math.max(5, 20000 / tuples);
+            String suffix = " " + tuples + " tuples x 10 similars";
+            MicroBenchmark.run("map" + suffix, operations, () -> map.readValue(page));
+            MicroBenchmark.run("streaming" + suffix, operations, () -> streaming.readValue(page));
+        }
+    }
+
+    protected static String generate(int tuples, int similars) throws IOException {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int t = 0; t < tuples; t++) {
+            List<Map<String, String>> similarDocuments = new ArrayList<>();
+            for (int s = 0; s < similars; s++) {
+                similarDocuments.add(singletonMap("doc_" + t + "_" + s, "file:content"));
+            }
+            Map<String, Object> tuple = new HashMap<>();
+            tuple.put("documentId", "doc_" + t);
+            tuple.put("xpath", "file:content");
+            tuple.put("similarDocuments", similarDocuments);
+            result.add(tuple);
+        }
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("scrollId", "DXF1ZXJ5QW5kRmV0Y2gB");
+        page.put("result", result);
+        return MAPPER.writeValueAsString(page);
+    }
+
+    protected static ObjectReader mapReader() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.addMixIn(SimilarTuple.class, MapMixIn.class);
+        return mapper.readerFor(ScrollableResult.class);
+    }
+
+    @JsonDeserialize(using = MapDeserializer.class)
+    protected abstract static class MapMixIn {
+    }
+
+    /**
+     * Former deserializer: reads a map per tuple and a map per similar document, then collects the pairs.
+     */
+    protected static class MapDeserializer extends JsonDeserializer<SimilarTuple> {
+
+        @Override
+        public SimilarTuple deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
+                throws IOException {
+            Map<String, Object> object = jsonParser.readValueAs(new TypeReference<Map<String, Object>>() {
+            });
+            String docId = (String) object.get("documentId");
+            String xpath = (String) object.get("xpath");
+            @SuppressWarnings("unchecked")
+            List<Map<String, String>> similarDocumentsList = (List<Map<String, String>>) object.get(
+                    "similarDocuments");
+            Set<Pair<String, String>> similarDocuments = similarDocumentsList.stream()
+                                                                             .filter(elem -> !elem.isEmpty())
+                                                                             .map(elem -> elem.entrySet()
+                                                                                              .iterator()
+                                                                                              .next())
+                                                                             .map(entry -> Pair.of(entry.getKey(),
+                                                                                     entry.getValue()))
+                                                                             .collect(Collectors.toSet());
+            return new SimilarTuple(docId, xpath, similarDocuments);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+
+/**
+ * Minimal harness for the benchmarks of this module, which are skipped unless the {@code benchmark} system property
+ * is set, e.g. {@code mvn test -Dbenchmark -Dtest=Benchmark*}.
+ * Reports the average time and, when the JVM supports it, the bytes allocated per operation.
+ */
+public final class MicroBenchmark {
+
+    public static final String BENCHMARK_PROPERTY = "benchmark";
+
+    private static final int WARM_UP_ITERATIONS = 5;
+
+    private static final int MEASURED_ITERATIONS = 10;
+
+    private MicroBenchmark() {
+    }
+
+    public static boolean isEnabled() {
+        return System.getProperty(BENCHMARK_PROPERTY) != null;
+    }
+
+    /**
+     * Runs the operation {@code operations} times per iteration, after some warm up iterations.
+     *
+     * @return average nanoseconds per operation
+     */
+    public static double run(String name, int operations, Callable<?> operation) throws Exception {
+        Object blackhole = null;
+        for (int i = 0; i < WARM_UP_ITERATIONS * operations; i++) {
+            blackhole = operation.call();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS * operations; i++) {
+            blackhole = operation.call();
+        }
+        double nanos = (double) (System.nanoTime() - start) / (MEASURED_ITERATIONS * operations);
+        double bytes = (double) (allocatedBytes() - allocatedBefore) / (MEASURED_ITERATIONS * operations);
+
+        System.out.printf("%-48s %12.0f ns/op %14.0f B/op%n", name, nanos, allocatedBefore < 0 ? Double.NaN : bytes);
+        if (blackhole == null) {
+            System.out.println(name + " returned null");
+        }
+        return nanos;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, -1 when not supported
+     */
+    public static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
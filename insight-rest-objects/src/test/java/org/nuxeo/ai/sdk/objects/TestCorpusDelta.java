@@ -0,0 +1,119 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.Test;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+
+public class TestCorpusDelta {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String DELTA = "{\"query\":\"SELECT * FROM Document\","
+            + "\"inputs\":[{\"name\":\"file:content\",\"type\":\"img\",\"extra\":{\"a\":1}}],"
+            + "\"outputs\":["
+            + "{\"name\":\"dc:title\",\"output_name\":null,\"multi_class\":true,\"categories\":[\"a\",\"b\"],"
+            + "\"type\":\"cat\"},"
+            + "{\"name\":\"dc:subjects\",\"output_name\":\"subjects\",\"unknown\":[1,2],\"type\":\"txt\"}],"
+            + "\"modelId\":\"model\",\"start\":null,\"end\":1571155442461}";
+
+    @Test
+    public void shouldIterateOverOutputs() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        CorpusDelta delta = CorpusDelta.read(parser(DELTA), () -> closed.set(true));
+        assertThat(delta.getQuery()).isEqualTo("SELECT * FROM Document");
+        assertThat(delta.getInputs()).containsExactly(PropertyType.of("file:content", "img"));
+        assertThat(delta.getModelId()).isNull();
+
+        assertThat(delta.hasNext()).isTrue();
+        CorpusDelta.Output title = delta.next();
+        assertThat(title.getName()).isEqualTo("dc:title");
+        assertThat(title.getOutputName()).isNull();
+        assertThat(title.isMultiClass()).isTrue();
+        assertThat(title.getCategories()).containsExactly("a", "b");
+        assertThat(title.getType()).isEqualTo("cat");
+
+        CorpusDelta.Output subjects = delta.next();
+        assertThat(subjects.getName()).isEqualTo("dc:subjects");
+        assertThat(subjects.getOutputName()).isEqualTo("subjects");
+        assertThat(subjects.isMultiClass()).isFalse();
+        assertThat(subjects.getCategories()).isEmpty();
+
+        assertThat(closed).isFalse();
+        assertThat(delta.hasNext()).isFalse();
+        assertThat(closed).isTrue();
+        assertThat(delta.getModelId()).isEqualTo("model");
+        assertThat(delta.getStart()).isNull();
+        assertThat(delta.getEnd()).isEqualTo(1571155442461L);
+    }
+
+    @Test
+    public void shouldCloseWhenStreamIsClosed() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        CorpusDelta delta = CorpusDelta.read(parser(DELTA), () -> closed.set(true));
+        try (Stream<CorpusDelta.Output> outputs = delta.stream()) {
+            assertThat(outputs.findFirst()).hasValueSatisfying(output -> assertThat(output.getName()).isEqualTo(
+                    "dc:title"));
+        }
+        assertThat(closed).isTrue();
+        assertThat(delta.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldReadDeltaWithoutOutputs() throws IOException {
+        CorpusDelta delta = CorpusDelta.read(parser("{\"query\":\"q\",\"outputs\":null,\"end\":1}"), null);
+        assertThat(delta.hasNext()).isFalse();
+        assertThat(delta.getQuery()).isEqualTo("q");
+        assertThat(delta.getEnd()).isEqualTo(1L);
+        assertThat(delta.getInputs()).isEmpty();
+    }
+
+    @Test
+    public void shouldRejectInvalidDelta() {
+        assertThatThrownBy(() -> CorpusDelta.read(parser("[]"), null)).isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    public void shouldStreamLargeDelta() throws IOException {
+        int count = 10_000;
+        StringBuilder json = new StringBuilder("{\"outputs\":[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"name\":\"field").append(i).append("\",\"type\":\"cat\"}");
+        }
+        json.append("]}");
+
+        try (CorpusDelta delta = CorpusDelta.read(parser(json.toString()), null)) {
+            assertThat(delta.stream().filter(output -> "cat".equals(output.getType())).count()).isEqualTo(count);
+        }
+    }
+
+    private static JsonParser parser(String json) throws IOException {
+        return FACTORY.createParser(new StringReader(json));
+    }
+}
@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
@@ -55,4 +56,59 @@ public class TestInsightResponse {
         assertThat(ir).isNotNull();
         assertThat(ir.labels).hasSize(4);
     }
+
+    @Test
+    public void shouldDeserializeOutputsInAnyOrder() throws IOException {
+        String json = "{\"results\":[{\"dc:title\":[0.25,0.75],\"dc:title_labels\":[\"a\",\"b\"],"
+                + "\"extra\":{\"nested\":[1]},\"dc:format_labels\":[\"c\"],\"dc:format\":[0.5,0.5],"
+                + "\"output_names\":[\"dc:title\",\"dc:format\",\"dc:missing\"]}],\"model\":\"m\"}";
+        InsightResponse ir = MAPPER.readValue(json, InsightResponse.class);
+        assertThat(ir.getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("a", 0.25f),
+                new InsightResponse.Label("b", 0.75f));
+        assertThat(ir.getLabels().get("dc:format")).isEmpty();
+        assertThat(ir.getLabels().get("dc:missing")).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepBestLabelsWhenDeserializing() throws IOException {
+        String json = "{\"results\":[{\"output_names\":[\"dc:title\"],\"dc:title\":[0.1,0.6,0.05,0.25],"
+                + "\"dc:title_labels\":[\"a\",\"b\",\"c\",\"d\"]}]}";
+        InsightResponse top = InsightResponse.reader(MAPPER, 2, 0).readValue(json);
+        assertThat(top.getOutputs().get("dc:title").size()).isEqualTo(2);
+        assertThat(top.getLabels().get("dc:title")).extracting(InsightResponse.Label::getName)
+                                                   .containsExactly("b", "d");
+
+        InsightResponse above = InsightResponse.reader(MAPPER, -1, 0.1f).readValue(json);
+        assertThat(above.getLabels().get("dc:title")).extracting(InsightResponse.Label::getName)
+                                                     .containsExactly("a", "b", "d");
+
+        InsightResponse all = MAPPER.readValue(json, InsightResponse.class);
+        assertThat(all.getTopLabels("dc:title", 1)).containsExactly(new InsightResponse.Label("b", 0.6f));
+        assertThat(all.getLabelsAbove("dc:title", 0.2f)).extracting(InsightResponse.Label::getName)
+                                                        .containsExactly("b", "d");
+        assertThat(all.getTopLabels("dc:unknown", 1)).isEmpty();
+    }
+
+    @Test
+    public void shouldRoundTripInternalLabels() throws IOException {
+        List<InsightResponse.Label> labels = Arrays.asList(new InsightResponse.Label("LOC", 0.01f),
+                new InsightResponse.Label("HUM", 0.99f));
+        InsightResponse ir = new InsightResponse(Collections.singletonMap("dc:title", labels));
+
+        InsightResponse read = MAPPER.readValue(MAPPER.writeValueAsString(ir), InsightResponse.class);
+        assertThat(read.getLabels()).isEqualTo(ir.getLabels());
+    }
+
+    @Test
+    public void shouldReadEveryResultSeparately() throws IOException {
+        String json = "{\"results\": ["
+                + "{\"output_names\": [\"dc:title\"], \"dc:title\": [0.2, 0.7], \"dc:title_labels\": [\"a\", \"b\"]},"
+                + "{\"output_names\": [\"dc:title\"], \"dc:title\": [0.9], \"dc:title_labels\": [\"c\"]}"
+                + "], \"ignored\": {\"results\": []}}";
+
+        List<InsightResponse> responses = InsightResponse.readResults(MAPPER.getFactory().createParser(json), 1, 0);
+        assertThat(responses).hasSize(2);
+        assertThat(responses.get(0).getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("b", 0.7f));
+        assertThat(responses.get(1).getLabels().get("dc:title")).containsExactly(new InsightResponse.Label("c", 0.9f));
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.junit.Test;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TestModelDescriptor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void shouldParseDocumentsListing() throws IOException {
+        List<ModelDescriptor> models;
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream("model_documents.json");
+             JsonParser parser = MAPPER.getFactory().createParser(stream)) {
+            models = ModelDescriptor.parseDocuments(parser);
+        }
+
+        assertThat(models).hasSize(2);
+        ModelDescriptor components = models.get(0);
+        assertThat(components.getId()).isEqualTo("6b93bace-4ed3-408f-8efe-79a8dd287199");
+        assertThat(components.getName()).isEqualTo("Components");
+        assertThat(components.getLabels()).containsExactly("dev");
+        assertThat(components.hasLabel("dev")).isTrue();
+        assertThat(components.getDatasource()).isEqualTo("dev");
+        assertThat(components.isPublished()).isTrue();
+        assertThat(components.getInputs()).containsExactly(PropertyType.of("dc:title", "txt"),
+                PropertyType.of("tc:description", "txt"));
+        assertThat(components.getOutputs()).containsExactly(PropertyType.of("tc:components", "cat"));
+
+        ModelDescriptor tags = models.get(1);
+        assertThat(tags.getName()).isEqualTo("tags");
+        assertThat(tags.getLabels()).isEmpty();
+        assertThat(tags.getDatasource()).isNull();
+        assertThat(tags.getPublishState()).isEqualTo("never_published");
+        assertThat(tags.isPublished()).isFalse();
+    }
+
+    @Test
+    public void shouldDeserializeDocument() throws IOException {
+        String json = "{\"uid\":\"an-id\",\"title\":\"a title\",\"facets\":[\"Versionable\"],\"properties\":"
+                + "{\"ai_model:training_information\":{\"jobId\":\"a job\"},\"ai_model:labels\":[\"prod\"]}}";
+        ModelDescriptor model = MAPPER.readValue(json, ModelDescriptor.class);
+        assertThat(model.getId()).isEqualTo("an-id");
+        assertThat(model.getName()).isEqualTo("a title");
+        assertThat(model.getLabels()).containsExactly("prod");
+        assertThat(model.getInputs()).isEmpty();
+    }
+
+    @Test
+    public void shouldParseEmptyListing() throws IOException {
+        try (JsonParser parser = MAPPER.getFactory()
+                                       .createParser("{\"entity-type\":\"documents\",\"entries\":[]}")) {
+            assertThat(ModelDescriptor.parseDocuments(parser)).isEmpty();
+        }
+    }
+}
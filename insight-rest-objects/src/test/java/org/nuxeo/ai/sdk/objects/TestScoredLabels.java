@@ -0,0 +1,76 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class TestScoredLabels {
+
+    private final ScoredLabels scored = new ScoredLabels(new String[] { "a", "b", "c", "d", "e" },
+            new float[] { 0.1f, 0.5f, 0.05f, 0.3f, 0.05f });
+
+    @Test
+    public void shouldSelectTopLabels() {
+        assertThat(scored.top(3)).containsExactly(new InsightResponse.Label("b", 0.5f),
+                new InsightResponse.Label("d", 0.3f), new InsightResponse.Label("a", 0.1f));
+        assertThat(scored.top(10)).hasSize(5).extracting(InsightResponse.Label::getName).startsWith("b", "d", "a");
+        assertThat(scored.top(0)).isEmpty();
+    }
+
+    @Test
+    public void shouldSelectLabelsAboveThreshold() {
+        assertThat(scored.above(0.3f)).extracting(InsightResponse.Label::getName).containsExactly("b", "d");
+        assertThat(scored.above(0.9f)).isEmpty();
+    }
+
+    @Test
+    public void shouldRetainBestLabelsInOriginalOrder() {
+        ScoredLabels retained = scored.retain(2, Float.NEGATIVE_INFINITY);
+        assertThat(retained.toLabels()).extracting(InsightResponse.Label::getName).containsExactly("b", "d");
+        assertThat(scored.retain(-1, 0.1f).toLabels()).extracting(InsightResponse.Label::getName)
+                                                      .containsExactly("a", "b", "d");
+        assertThat(scored.retain(10, 0)).isSameAs(scored);
+    }
+
+    @Test
+    public void shouldShareNames() {
+        String name = new String(new char[] { 'l', 'a', 'b', 'e', 'l' });
+        String copy = new String(name);
+        assertThat(ScoredLabels.shared(copy)).isSameAs(ScoredLabels.shared(name));
+        assertThat(ScoredLabels.of(Arrays.asList(new InsightResponse.Label(copy, 1)))
+                               .getName(0)).isSameAs(ScoredLabels.shared(name));
+    }
+
+    @Test
+    public void shouldReleaseUnusedNames() throws InterruptedException {
+        ScoredLabels.Dictionary dictionary = new ScoredLabels.Dictionary(1);
+        dictionary.share(new String(new char[] { 'g', 'o', 'n', 'e' }));
+        Map<String, ?> stripe = dictionary.stripes[0];
+        for (int i = 0; i < 50 && !stripe.isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(stripe).isEmpty();
+    }
+}
@@ -60,4 +60,38 @@ public class TestScrollableResult {
         assertThat(deserialized.getResult().get(0).getSimilarDocuments()).containsExactlyInAnyOrder(
                 Pair.of("doc2", "file:content"), Pair.of("doc3", "file:content"));
     }
+
+    @Test
+    public void shouldReadPageInOrder() throws JsonProcessingException {
+        String json = "{\"result\": ["
+                + "{\"documentId\": \"doc1\", \"xpath\": \"file:content\", "
+                + "\"similarDocuments\": [{\"doc2\": \"file:content\"}, {\"doc3\": \"file:content\"}]}, "
+                + "{\"documentId\": \"doc2\", \"xpath\": \"file:content\", "
+                + "\"similarDocuments\": [{\"doc1\": \"file:content\"}]}], \"scrollId\": \"next\"}";
+        ScrollableResult page = MAPPER.readValue(json, ScrollableResult.class);
+        assertThat(page.getScrollId()).isEqualTo("next");
+        assertThat(page.getResult()).extracting(SimilarTuple::getDocumentId).containsExactly("doc1", "doc2");
+        assertThat(page.getResult().get(0).getSimilarDocuments()).containsExactly(Pair.of("doc2", "file:content"),
+                Pair.of("doc3", "file:content"));
+        assertThat(page.getResult().get(1).getSimilarDocuments()).containsExactly(Pair.of("doc1", "file:content"));
+    }
+
+    @Test
+    public void shouldSkipEmptyAndKeepFirstEntryOfSimilarDocuments() throws JsonProcessingException {
+        String json = "{\"documentId\": \"doc1\", \"extra\": [1, {\"a\": 2}], \"similarDocuments\": "
+                + "[{}, {\"doc2\": \"file:content\", \"ignored\": \"dc:title\"}, {\"doc3\": null}, \"noise\"],"
+                + " \"xpath\": \"file:content\"}";
+        SimilarTuple tuple = MAPPER.readValue(json, SimilarTuple.class);
+        assertThat(tuple.getDocumentId()).isEqualTo("doc1");
+        assertThat(tuple.getXpath()).isEqualTo("file:content");
+        assertThat(tuple.getSimilarDocuments()).containsExactly(Pair.of("doc2", "file:content"), Pair.of("doc3", null));
+    }
+
+    @Test
+    public void shouldReadTupleWithoutSimilarDocuments() throws JsonProcessingException {
+        SimilarTuple tuple = MAPPER.readValue("{\"documentId\": \"doc1\", \"xpath\": null}", SimilarTuple.class);
+        assertThat(tuple.getDocumentId()).isEqualTo("doc1");
+        assertThat(tuple.getXpath()).isNull();
+        assertThat(tuple.getSimilarDocuments()).isEmpty();
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ *  (C) Copyright 2006-2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *
+ *  Contributors:
+ *       Andrei Nechaev
+ */
+package org.nuxeo.ai.sdk.objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+import org.junit.Test;
+import org.nuxeo.ai.sdk.objects.deduplication.ScrollableResult;
+import org.nuxeo.ai.sdk.objects.deduplication.SimilarityGraph;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TestSimilarityGraph {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void shouldClusterSimilarTuples() throws IOException {
+        String json = "{\"scrollId\": \"next\", \"result\": ["
+                + "{\"documentId\": \"doc1\", \"xpath\": \"file:content\", \"similarDocuments\": "
+                + "[{\"doc2\": \"file:content\"}, {\"doc3\": \"file:content\"}, {\"doc1\": \"file:content\"}]},"
+                + "{\"documentId\": \"doc2\", \"xpath\": \"file:content\", \"similarDocuments\": "
+                + "[{\"doc1\": \"file:content\"}]},"
+                + "{\"documentId\": \"doc4\", \"xpath\": \"file:content\", \"similarDocuments\": "
+                + "[{\"doc5\": \"file:content\"}, {\"doc1\": \"dc:title\"}]},"
+                + "{\"documentId\": \"doc6\", \"xpath\": \"file:content\", \"similarDocuments\": []}]}";
+        ScrollableResult page = MAPPER.readValue(json, ScrollableResult.class);
+
+        SimilarityGraph graph = new SimilarityGraph.Builder().addAll(page.getResult()).build();
+        assertThat(graph.getVertexCount()).isEqualTo(7);
+        assertThat(graph.getEdgeCount()).isEqualTo(4);
+        int doc1 = graph.getVertex("doc1", "file:content");
+        int doc2 = graph.getVertex("doc2", "file:content");
+        int doc3 = graph.getVertex("doc3", "file:content");
+        assertThat(graph.getDocumentId(doc3)).isEqualTo("doc3");
+        assertThat(graph.getXpath(doc3)).isEqualTo("file:content");
+        assertThat(graph.getNeighbors(doc1)).containsExactly(doc2, doc3);
+        assertThat(graph.getDegree(doc2)).isEqualTo(1);
+        assertThat(graph.getVertex("doc1", "dc:title")).isNotEqualTo(doc1).isNotNegative();
+        assertThat(graph.getVertex("doc7", "file:content")).isEqualTo(-1);
+        assertThat(graph.getVertex("doc1", "dc:description")).isEqualTo(-1);
+
+        SimilarityGraph.Clusters clusters = graph.clusters();
+        assertThat(clusters.getCount()).isEqualTo(3);
+        assertThat(clusters.getCluster(doc1)).isZero();
+        assertThat(clusters.getMembers(0)).containsExactly(doc1, doc2, doc3);
+        int doc4 = graph.getVertex("doc4", "file:content");
+        assertThat(clusters.getSize(clusters.getCluster(doc4))).isEqualTo(3);
+        assertThat(clusters.getSize(clusters.getCluster(graph.getVertex("doc6", "file:content")))).isEqualTo(1);
+        assertThat(clusters.getLargerThan(2)).containsExactlyInAnyOrder(0, clusters.getCluster(doc4));
+    }
+
+    @Test
+    public void shouldClusterLargeGraphInParallel() {
+        Random random = new Random(42);
+        int documents = 50_000;
+        SimilarityGraph.Builder builder = new SimilarityGraph.Builder();
+        for (int i = 0; i < 60_000; i++) {
+            String document = "doc" + random.nextInt(documents);
+            String similar = "doc" + random.nextInt(documents);
+            builder.add(document, "file:content", similar, "file:content");
+            builder.add(similar, "file:content", document, "file:content");
+        }
+        SimilarityGraph graph = builder.build();
+        assertThat(graph.getEdgeCount()).isLessThanOrEqualTo(60_000);
+
+        SimilarityGraph.Clusters clusters = graph.clusters();
+        int[] expected = components(graph);
+        int[] actual = new int[graph.getVertexCount()];
+        Arrays.setAll(actual, clusters::getCluster);
+        assertThat(actual).isEqualTo(expected);
+        int total = 0;
+        for (int cluster = 0; cluster < clusters.getCount(); cluster++) {
+            int[] members = clusters.getMembers(cluster);
+            assertThat(members).hasSize(clusters.getSize(cluster)).isSorted();
+            for (int member : members) {
+                assertThat(actual[member]).isEqualTo(cluster);
+            }
+            total += members.length;
+        }
+        assertThat(total).isEqualTo(graph.getVertexCount());
+    }
+
+    /**
+     * Sequential breadth first search numbering the components by their first vertex
+     */
+    protected static int[] components(SimilarityGraph graph) {
+        int[] components = new int[graph.getVertexCount()];
+        Arrays.fill(components, -1);
+        int count = 0;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int vertex = 0; vertex < components.length; vertex++) {
+            if (components[vertex] >= 0) {
+                continue;
+            }
+
+            components[vertex] = count;
+            queue.add(vertex);
+            while (!queue.isEmpty()) {
+                for (int neighbor : graph.getNeighbors(queue.poll())) {
+                    if (components[neighbor] < 0) {
+                        components[neighbor] = count;
+                        queue.add(neighbor);
+                    }
+                }
+            }
+            count++;
+        }
+        return components;
+    }
+}